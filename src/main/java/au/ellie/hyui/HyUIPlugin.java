@@ -1,12 +1,17 @@
 package au.ellie.hyui;
 
+import au.ellie.hyui.builders.UILifecycle;
 import au.ellie.hyui.commands.HyUIAddHudCommand;
 import au.ellie.hyui.commands.HyUIRemHudCommand;
 import au.ellie.hyui.commands.HyUIUpdateHudCommand;
 import au.ellie.hyui.commands.HyUITestGuiCommand;
 import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.event.events.player.AddPlayerToWorldEvent;
+import com.hypixel.hytale.server.core.event.events.player.DrainPlayerFromWorldEvent;
+import com.hypixel.hytale.server.core.event.events.player.PlayerDisconnectEvent;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
 
 import javax.annotation.Nonnull;
 
@@ -28,12 +33,31 @@ public class HyUIPlugin extends JavaPlugin {
 
     @Override
     protected void setup() {
+        // HUDs, pages, timers and pending updates of a player are released as soon as they are gone.
+        this.getEventRegistry().register(PlayerDisconnectEvent.class,
+                event -> UILifecycle.releasePlayer(event.getPlayerRef()));
+        // HUDs are paused while a player is between worlds, and shown again in the world they join.
+        this.getEventRegistry().registerGlobal(DrainPlayerFromWorldEvent.class, event -> {
+            PlayerRef playerRef = event.getHolder().getComponent(PlayerRef.getComponentType());
+            if (playerRef != null) {
+                UILifecycle.detachPlayer(playerRef);
+            }
+        });
+        this.getEventRegistry().registerGlobal(AddPlayerToWorldEvent.class, event -> {
+            PlayerRef playerRef = event.getHolder().getComponent(PlayerRef.getComponentType());
+            if (playerRef != null) {
+                UILifecycle.attachPlayer(playerRef, event.getWorld());
+            }
+        });
+
         if (HyUIPluginLogger.LOGGING_ENABLED) {
-            instance.logInfo("Setting up plugin " + this.getName());
+            instance.logInfo("Setting up plugin %s", this.getName());
             this.getCommandRegistry().registerCommand(new HyUITestGuiCommand());
             this.getCommandRegistry().registerCommand(new HyUIAddHudCommand());
             this.getCommandRegistry().registerCommand(new HyUIRemHudCommand());
             this.getCommandRegistry().registerCommand(new HyUIUpdateHudCommand());
+            UILifecycle.addReleaseListener(playerRef ->
+                    HyUIAddHudCommand.HUD_INSTANCES.removeIf(hud -> hud.getPlayerRef() == playerRef));
         }
         
     }
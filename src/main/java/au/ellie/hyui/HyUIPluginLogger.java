@@ -2,19 +2,127 @@ package au.ellie.hyui;
 
 import com.hypixel.hytale.logger.HytaleLogger;
 
+import java.util.function.Supplier;
+
 public class HyUIPluginLogger {
-    
+
     private final HytaleLogger internalLogger = HytaleLogger.forEnclosingClass();
-    
+
     public static final boolean LOGGING_ENABLED = false;
-    
+
+    /**
+     * Log levels, from least to most verbose.
+     */
+    public enum Level {
+        OFF, WARNING, INFO, FINE
+    }
+
+    private static volatile Level level = LOGGING_ENABLED ? Level.INFO : Level.OFF;
+
     public HyUIPluginLogger() {
-        
+
+    }
+
+    /**
+     * Changes the log level at runtime. Messages above this level are discarded
+     * before their text is built.
+     *
+     * @param newLevel the new log level.
+     */
+    public static void setLevel(Level newLevel) {
+        level = newLevel != null ? newLevel : Level.OFF;
     }
-    
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public boolean isEnabled(Level messageLevel) {
+        return messageLevel != Level.OFF && messageLevel.ordinal() <= level.ordinal();
+    }
+
+    public boolean isInfoEnabled() {
+        return isEnabled(Level.INFO);
+    }
+
+    public boolean isFineEnabled() {
+        return isEnabled(Level.FINE);
+    }
+
     public void logInfo(String message) {
-        if (LOGGING_ENABLED) {
+        if (isEnabled(Level.INFO)) {
             internalLogger.atInfo().log(message);
         }
     }
+
+    /**
+     * Logs a message built by the supplier, only calling it if info logging is enabled.
+     */
+    public void logInfo(Supplier<String> message) {
+        if (isEnabled(Level.INFO)) {
+            internalLogger.atInfo().log(message.get());
+        }
+    }
+
+    /**
+     * Logs a {@link String#format(String, Object...)} style message, only formatting it
+     * if info logging is enabled.
+     */
+    public void logInfo(String format, Object arg) {
+        if (isEnabled(Level.INFO)) {
+            internalLogger.atInfo().log(String.format(format, arg));
+        }
+    }
+
+    public void logInfo(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.INFO)) {
+            internalLogger.atInfo().log(String.format(format, arg1, arg2));
+        }
+    }
+
+    public void logInfo(String format, Object arg1, Object arg2, Object arg3) {
+        if (isEnabled(Level.INFO)) {
+            internalLogger.atInfo().log(String.format(format, arg1, arg2, arg3));
+        }
+    }
+
+    /**
+     * Logs verbose per-element build and dispatch traces. These are only useful while
+     * debugging HyUI itself.
+     */
+    public void logFine(String format, Object arg) {
+        if (isEnabled(Level.FINE)) {
+            internalLogger.atInfo().log(String.format(format, arg));
+        }
+    }
+
+    public void logFine(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.FINE)) {
+            internalLogger.atInfo().log(String.format(format, arg1, arg2));
+        }
+    }
+
+    public void logFine(String format, Object arg1, Object arg2, Object arg3) {
+        if (isEnabled(Level.FINE)) {
+            internalLogger.atInfo().log(String.format(format, arg1, arg2, arg3));
+        }
+    }
+
+    public void logFine(Supplier<String> message) {
+        if (isEnabled(Level.FINE)) {
+            internalLogger.atInfo().log(message.get());
+        }
+    }
+
+    public void logWarning(String message) {
+        if (isEnabled(Level.WARNING)) {
+            internalLogger.atWarning().log(message);
+        }
+    }
+
+    public void logWarning(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.WARNING)) {
+            internalLogger.atWarning().log(String.format(format, arg1, arg2));
+        }
+    }
 }
@@ -7,19 +7,21 @@ import au.ellie.hyui.events.UIContext;
 import au.ellie.hyui.theme.Theme;
 import com.hypixel.hytale.protocol.packets.interface_.CustomUIEventBindingType;
 import com.hypixel.hytale.server.core.ui.builder.EventData;
-import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
-import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
 
 import java.util.Collections;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Builder for creating button UI elements. 
  * Buttons are interactive elements that can trigger actions when clicked.
  */
 public class ButtonBuilder extends UIElementBuilder<ButtonBuilder> {
+    private static final Set<String> GAME_THEME_UNSUPPORTED_STYLES =
+            Set.of("FontSize", "TextColor", "Alignment", "HorizontalAlignment", "VerticalAlignment");
+
     private String text;
 
     /**
@@ -95,10 +97,24 @@ public class ButtonBuilder extends UIElementBuilder<ButtonBuilder> {
      * @return the current instance of ButtonBuilder for method chaining
      */
     public ButtonBuilder withText(String text) {
+        checkNotFrozen();
         // Not supported in back buttons.
         if (elementPath.contains("BackButton"))
             return this;
         this.text = text;
+        markDirty("Text");
+        return this;
+    }
+
+    /**
+     * Binds the text of the button to a supplier, evaluated every time the HUD refreshes.
+     * Only changes from the last sent text are sent.
+     *
+     * @param text Supplies the button text, or null to remove the binding.
+     * @return This ButtonBuilder instance for method chaining.
+     */
+    public ButtonBuilder bindText(Supplier<String> text) {
+        bind("Text", text);
         return this;
     }
 
@@ -133,31 +149,31 @@ public class ButtonBuilder extends UIElementBuilder<ButtonBuilder> {
     @Override
     protected Set<String> getUnsupportedStyleProperties() {
         if (this.theme == Theme.GAME_THEME) {
-            return Set.of("FontSize", "TextColor", "Alignment", "HorizontalAlignment", "VerticalAlignment");
+            return GAME_THEME_UNSUPPORTED_STYLES;
         }
         return Collections.emptySet();
     }
 
     @Override
-    protected void onBuild(UICommandBuilder commands, UIEventBuilder events) {
+    protected void onBuild(UICommandRecorder commands) {
         String selector = getSelector();
         if (selector == null) return;
 
         if (text != null) {
-            HyUIPlugin.getLog().logInfo("Setting Text: " + text + " for " + selector);
-            commands.set(selector + ".Text", text);
+            HyUIPlugin.getLog().logFine("Setting Text: %s for %s", text, selector);
         }
+        commands.setSlot(selector + ".Text", this, "Text", () -> text);
 
         if (hyUIStyle == null && style != null) {
-            HyUIPlugin.getLog().logInfo("Setting Style: " + style + " for " + selector);
+            HyUIPlugin.getLog().logFine("Setting Style: %s for %s", style, selector);
             commands.set(selector + ".Style", style);
         }
 
         listeners.forEach(listener -> {
             if (listener.type() == CustomUIEventBindingType.Activating) {
                 String eventId = getEffectiveId();
-                HyUIPlugin.getLog().logInfo("Adding Activating event binding: " + eventId + " for " + selector);
-                events.addEventBinding(CustomUIEventBindingType.Activating, selector, 
+                HyUIPlugin.getLog().logFine("Adding Activating event binding: %s for %s", eventId, selector);
+                commands.addEventBinding(CustomUIEventBindingType.Activating, selector, 
                         EventData.of("Action", UIEventActions.BUTTON_CLICKED)
                             .append("Target", eventId), 
                         false);
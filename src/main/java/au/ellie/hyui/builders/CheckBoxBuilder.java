@@ -6,11 +6,10 @@ import au.ellie.hyui.events.UIEventActions;
 import au.ellie.hyui.elements.UIElements;
 import com.hypixel.hytale.protocol.packets.interface_.CustomUIEventBindingType;
 import com.hypixel.hytale.server.core.ui.builder.EventData;
-import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
-import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
 
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Builder for creating checkbox UI elements with label.
@@ -37,8 +36,22 @@ public class CheckBoxBuilder extends UIElementBuilder<CheckBoxBuilder> {
      * @return the {@code CheckBoxBuilder} for method chaining
      */
     public CheckBoxBuilder withValue(boolean value) {
+        checkNotFrozen();
         this.value = value;
         this.initialValue = value;
+        markDirty("Value");
+        return this;
+    }
+
+    /**
+     * Binds whether the checkbox is checked to a supplier, evaluated every time the HUD refreshes.
+     * Only changes from the last sent value are sent.
+     *
+     * @param value supplies the checked state, or null to remove the binding.
+     * @return this builder for method chaining.
+     */
+    public CheckBoxBuilder bindValue(Supplier<Boolean> value) {
+        bind("Value", value);
         return this;
     }
 
@@ -88,15 +101,15 @@ public class CheckBoxBuilder extends UIElementBuilder<CheckBoxBuilder> {
     }
 
     @Override
-    protected void onBuild(UICommandBuilder commands, UIEventBuilder events) {
+    protected void onBuild(UICommandRecorder commands) {
         String selector = getSelector();
         if (selector == null) return;
 
         if (value != null) {
-            // For CheckBoxWithLabel, the actual CheckBox is a child
-            HyUIPlugin.getLog().logInfo("Setting Value: " + value + " for " + selector + " #CheckBox");
-            commands.set(selector + " #CheckBox.Value", value);
+            HyUIPlugin.getLog().logFine("Setting Value: %s for %s #CheckBox", value, selector);
         }
+        // For CheckBoxWithLabel, the actual CheckBox is a child
+        commands.setSlot(selector + " #CheckBox.Value", this, "Value", () -> value);
 
         /*if (text != null) {
             HyUIPlugin.getInstance().logInfo("Setting Text: " + text + " for " + selector);
@@ -104,15 +117,15 @@ public class CheckBoxBuilder extends UIElementBuilder<CheckBoxBuilder> {
         }*/
 
         if (hyUIStyle == null && style != null) {
-            HyUIPlugin.getLog().logInfo("Setting Style: " + style + " for " + selector);
+            HyUIPlugin.getLog().logFine("Setting Style: %s for %s", style, selector);
             commands.set(selector + ".Style", style);
         }
 
         listeners.forEach(listener -> {
             if (listener.type() == CustomUIEventBindingType.ValueChanged) {
                 String eventId = getEffectiveId();
-                HyUIPlugin.getLog().logInfo("Adding ValueChanged event binding for " + selector + " #CheckBox with eventId: " + eventId);
-                events.addEventBinding(CustomUIEventBindingType.ValueChanged, selector + " #CheckBox", 
+                HyUIPlugin.getLog().logFine("Adding ValueChanged event binding for %s #CheckBox with eventId: %s", selector, eventId);
+                commands.addEventBinding(CustomUIEventBindingType.ValueChanged, selector + " #CheckBox", 
                         EventData.of("@ValueBool", selector + " #CheckBox.Value")
                             .append("Target", eventId)
                             .append("Action", UIEventActions.VALUE_CHANGED),
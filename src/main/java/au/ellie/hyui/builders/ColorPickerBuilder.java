@@ -6,11 +6,10 @@ import au.ellie.hyui.events.UIEventActions;
 import au.ellie.hyui.elements.UIElements;
 import com.hypixel.hytale.protocol.packets.interface_.CustomUIEventBindingType;
 import com.hypixel.hytale.server.core.ui.builder.EventData;
-import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
-import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
 
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Builder for creating ColorPicker UI element.
@@ -42,8 +41,22 @@ public class ColorPickerBuilder extends UIElementBuilder<ColorPickerBuilder> {
      *         allowing for method chaining.
      */
     public ColorPickerBuilder withValue(String hexColor) {
+        checkNotFrozen();
         this.value = hexColor;
         this.initialValue = hexColor;
+        markDirty("Value");
+        return this;
+    }
+
+    /**
+     * Binds the color of the picker to a supplier of hex colors, evaluated every time the HUD refreshes.
+     * Only changes from the last sent value are sent.
+     *
+     * @param hexColor supplies the color, or null to remove the binding.
+     * @return this builder for method chaining.
+     */
+    public ColorPickerBuilder bindValue(Supplier<String> hexColor) {
+        bind("Value", hexColor);
         return this;
     }
 
@@ -84,25 +97,25 @@ public class ColorPickerBuilder extends UIElementBuilder<ColorPickerBuilder> {
     }
 
     @Override
-    protected void onBuild(UICommandBuilder commands, UIEventBuilder events) {
+    protected void onBuild(UICommandRecorder commands) {
         String selector = getSelector();
         if (selector == null) return;
 
         if (value != null) {
-            HyUIPlugin.getLog().logInfo("Setting Value: " + value + " for " + selector);
-            commands.set(selector + ".Value", value);
+            HyUIPlugin.getLog().logFine("Setting Value: %s for %s", value, selector);
         }
+        commands.setSlot(selector + ".Value", this, "Value", () -> value);
 
         if (hyUIStyle == null && style != null) {
-            HyUIPlugin.getLog().logInfo("Setting Style: " + style + " for " + selector);
+            HyUIPlugin.getLog().logFine("Setting Style: %s for %s", style, selector);
             commands.set(selector + ".Style", style);
         }
 
         listeners.forEach(listener -> {
             if (listener.type() == CustomUIEventBindingType.ValueChanged) {
                 String eventId = getEffectiveId();
-                HyUIPlugin.getLog().logInfo("Adding ValueChanged event binding for " + selector + " with eventId: " + eventId);
-                events.addEventBinding(CustomUIEventBindingType.ValueChanged, selector, 
+                HyUIPlugin.getLog().logFine("Adding ValueChanged event binding for %s with eventId: %s", selector, eventId);
+                commands.addEventBinding(CustomUIEventBindingType.ValueChanged, selector, 
                         EventData.of("@Value", selector + ".Value")
                             .append("Target", eventId)
                             .append("Action", UIEventActions.VALUE_CHANGED), 
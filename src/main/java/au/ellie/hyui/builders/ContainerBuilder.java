@@ -2,8 +2,11 @@ package au.ellie.hyui.builders;
 
 import au.ellie.hyui.HyUIPlugin;
 import au.ellie.hyui.elements.UIElements;
-import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
-import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Builder for the Container UI element.
@@ -33,7 +36,21 @@ public class ContainerBuilder extends UIElementBuilder<ContainerBuilder> {
      * @return the {@code ContainerBuilder} instance for method chaining
      */
     public ContainerBuilder withTitleText(String titleText) {
+        checkNotFrozen();
         this.titleText = titleText;
+        markDirty("TitleText");
+        return this;
+    }
+
+    /**
+     * Binds the title text of the container to a supplier, evaluated every time the HUD refreshes.
+     * Only changes from the last sent title are sent.
+     *
+     * @param titleText supplies the title text, or null to remove the binding.
+     * @return the {@code ContainerBuilder} instance for method chaining
+     */
+    public ContainerBuilder bindTitleText(Supplier<String> titleText) {
+        bind("TitleText", titleText);
         return this;
     }
 
@@ -43,8 +60,10 @@ public class ContainerBuilder extends UIElementBuilder<ContainerBuilder> {
      * @return the {@code ContainerBuilder} instance for method chaining
      */
     public ContainerBuilder addContentChild(UIElementBuilder<?> child) {
+        checkNotFrozen();
         child.inside("#Content");
         this.children.add(child);
+        markDirty(STRUCTURE);
         return this;
     }
     
@@ -54,8 +73,10 @@ public class ContainerBuilder extends UIElementBuilder<ContainerBuilder> {
      * @return the {@code ContainerBuilder} instance for method chaining
      */
     public ContainerBuilder addTitleChild(UIElementBuilder<?> child) {
+        checkNotFrozen();
         child.inside("#Title");
         this.children.add(child);
+        markDirty(STRUCTURE);
         return this;
     }
     
@@ -65,38 +86,50 @@ public class ContainerBuilder extends UIElementBuilder<ContainerBuilder> {
     }
 
     @Override
-    protected void onBuild(UICommandBuilder commands, UIEventBuilder events) {
+    protected void onBuild(UICommandRecorder commands) {
         String selector = getSelector();
         if (selector == null) return;
 
+        String titleSelector = selector + " #Title #HyUIContainerTitle";
         if (titleText != null) {
-            String titleSelector = selector + " #Title #HyUIContainerTitle";
-            HyUIPlugin.getLog().logInfo("Setting Title Text: " + titleText + " for " + titleSelector);
-            commands.set(titleSelector + ".Text", titleText);
+            HyUIPlugin.getLog().logFine("Setting Title Text: %s for %s", titleText, titleSelector);
         }
+        commands.setSlot(titleSelector + ".Text", this, "TitleText", () -> titleText);
+    }
+
+    /**
+     * Replaces the keyed rows inside the #Content of the container.
+     * Rows whose key already exists are kept, so the factory is only called for new keys.
+     * When the HUD is flushed, only the rows that were added, removed or moved are sent.
+     *
+     * @param keys       the keys of the rows, in order.
+     * @param rowFactory creates the row for a new key.
+     * @return the {@code ContainerBuilder} instance for method chaining
+     */
+    public ContainerBuilder withKeyedChildren(List<String> keys, Function<String, ? extends UIElementBuilder<?>> rowFactory) {
+        updateKeyedChildren(keys, key -> rowFactory.apply(key).inside("#Content"));
+        return this;
+    }
+
+    /**
+     * @param key the key of the row.
+     * @return the row added for the key by {@link #withKeyedChildren(List, Function)}, if any.
+     */
+    public Optional<UIElementBuilder<?>> getKeyedChild(String key) {
+        return super.getKeyedChild(key);
     }
 
     @Override
-    protected void buildChildren(UICommandBuilder commands, UIEventBuilder events) {
+    protected String resolveChildParent(UIElementBuilder<?> child) {
         String selector = getSelector();
-        if (selector != null) {
-            for (UIElementBuilder<?> child : children) {
-                HyUIPlugin.getLog().logInfo("Building child element with parent selector: " + child.parentSelector);
-                // We want to make sure children can be placed in #Title or #Content.
-                // UIElementBuilder.inside() sets parentSelector.
-                String childParent = child.parentSelector;
-                if (childParent.equals("#Content")) {
-                    child.inside(selector + " #Content").build(commands, events);
-                } else if (childParent.equals("#Title")) {
-                    child.inside(selector + " #Title").build(commands, events);
-                } else if (childParent.startsWith("#")) {
-                    // If it starts with #, assume it's a sub-element ID of the container
-                    child.inside(selector + " " + childParent).build(commands, events);
-                } else {
-                    // Fallback
-                    child.inside(selector + " " + childParent).build(commands, events);
-                }
-            }
+        // We want to make sure children can be placed in #Title or #Content.
+        // UIElementBuilder.inside() sets parentSelector, relative to the container.
+        String childParent = child.parentSelector;
+        HyUIPlugin.getLog().logFine("Building child element with parent selector: %s", childParent);
+        if (childParent == null) {
+            return selector + " #Content";
         }
+        // #Content, #Title, or any other sub-element ID of the container.
+        return selector + " " + childParent;
     }
 }
@@ -0,0 +1,82 @@
+package au.ellie.hyui.builders;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the numeric part of element IDs for a single interface.
+ *
+ * Elements are numbered in the order they are registered with their {@link InterfaceBuilder},
+ * parents before children, so building the same tree twice produces the same IDs and selectors.
+ * Allocation is thread safe, so interfaces can be built from any world thread.
+ */
+final class ElementIdAllocator {
+    private static final ElementIdAllocator UNSCOPED = new ElementIdAllocator("U");
+
+    /**
+     * Marks the end of the base and of the scope of an ID. Hytale only permits alphanumeric IDs,
+     * so a {@code Q} inside a part is written twice and a single {@code Q} never ends up in a part.
+     */
+    private static final char ESCAPE = 'Q';
+    private static final String SEPARATOR = "Qs";
+
+    private final String scope;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ElementIdAllocator(String scope) {
+        this.scope = scope != null ? sanitize(scope) : "";
+    }
+
+    /**
+     * @return the allocator used for elements that are built without being added to an interface.
+     */
+    static ElementIdAllocator unscoped() {
+        return UNSCOPED;
+    }
+
+    String scope() {
+        return scope;
+    }
+
+    int nextIndex() {
+        return next.getAndIncrement();
+    }
+
+    void reset() {
+        next.set(0);
+    }
+
+    /**
+     * @return the internal ID for the given base, scope and index, for example {@code HYUUIDmybuttonQs0}.
+     * The parts are separated, so different parts never produce the same ID.
+     */
+    static String format(String base, String scope, int index) {
+        StringBuilder sb = new StringBuilder("HYUUID");
+        appendPart(sb, sanitize(base));
+        if (!scope.isEmpty()) {
+            appendPart(sb, scope);
+        }
+        return sb.append(index).toString();
+    }
+
+    private static void appendPart(StringBuilder sb, String part) {
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            sb.append(c);
+            if (c == ESCAPE) {
+                sb.append(ESCAPE);
+            }
+        }
+        sb.append(SEPARATOR);
+    }
+
+    static String sanitize(String id) {
+        StringBuilder sb = new StringBuilder(id.length());
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,416 @@
+package au.ellie.hyui.builders;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Compares the element tree last sent to the client with a new element tree, and records the
+ * commands that turn one into the other, see {@link HudBuilder#updateExisting(HyUIHud)}.
+ *
+ * Elements are matched by their ID if it was set with {@code withId}, otherwise by their position
+ * among the siblings of the same type. Only the properties of a matched element that differ are sent.
+ * Elements whose markup, edit callbacks or position changed, or which lost a property that cannot be
+ * cleared, are removed and built again. Edit callbacks are the same if they are the same instance, or
+ * were registered with equal keys, see {@link KeyedEdit}.
+ *
+ * The new elements keep their own internal IDs. The client keeps knowing a matched element by the ID
+ * of the element it replaces, so the interface renames IDs in the commands it sends from then on, see
+ * {@link UICommandRecorder#renameIds(int, Map)}.
+ */
+final class ElementTreeDiff {
+    private final UICommandRecorder recorder;
+    private final Map<String, Object> slotValues;
+    private final long sentVersion;
+    private final Map<String, String> oldIds;
+    private final Map<String, String> newIds = new HashMap<>();
+    private final Set<String> oldClientIds = new HashSet<>();
+    private final Set<String> usedIds = new HashSet<>();
+    private final Map<UIElementBuilder<?>, Snapshot> oldSnapshots = new IdentityHashMap<>();
+    private final Map<UIElementBuilder<?>, Snapshot> newSnapshots = new IdentityHashMap<>();
+    private int emitted;
+
+    private ElementTreeDiff(UICommandRecorder recorder, Map<String, Object> slotValues, long sentVersion, Map<String, String> oldIds) {
+        this.recorder = recorder;
+        this.slotValues = slotValues;
+        this.sentVersion = sentVersion;
+        this.oldIds = oldIds;
+    }
+
+    /**
+     * Records the commands that turn the old top level elements into the new ones.
+     *
+     * @param oldElements the top level elements last sent to the client.
+     * @param newElements the new top level elements.
+     * @param recorder    the recorder to write to.
+     * @param slotValues  slot overrides of the interface, may be null.
+     * @param sentVersion the version of the changes the client already has, see {@link UIElementBuilder#currentVersion()}.
+     * @param clientIds   the ID the client knows each old element by, keyed by its internal ID if they differ.
+     *                    Replaced with the IDs of the new elements once the commands are recorded.
+     * @return the number of commands recorded.
+     */
+    static int diff(List<UIElementBuilder<?>> oldElements, List<UIElementBuilder<?>> newElements,
+                    UICommandRecorder recorder, Map<String, Object> slotValues, long sentVersion,
+                    Map<String, String> clientIds) {
+        ElementTreeDiff diff = new ElementTreeDiff(recorder, slotValues, sentVersion, Map.copyOf(clientIds));
+        for (UIElementBuilder<?> element : oldElements) {
+            diff.collectIds(element, diff.oldIds, diff.oldClientIds);
+        }
+        diff.usedIds.addAll(diff.oldClientIds);
+        for (UIElementBuilder<?> element : newElements) {
+            diff.collectIds(element, Map.of(), diff.usedIds);
+        }
+        diff.diffChildren(null, null, oldElements, newElements);
+
+        // A later element, such as a keyed row, could get the internal ID of an old element the client
+        // still knows a new element by, so that ID is renamed as well.
+        Set<String> taken = new HashSet<>(diff.newIds.values());
+        taken.removeAll(diff.newIds.keySet());
+        for (String id : taken) {
+            diff.newIds.put(id, diff.freshId(id));
+        }
+        clientIds.clear();
+        diff.newIds.forEach((id, clientId) -> {
+            if (!id.equals(clientId)) {
+                clientIds.put(id, clientId);
+            }
+        });
+        return diff.emitted;
+    }
+
+    /**
+     * Adds the client IDs of an element and its descendants to the given set.
+     */
+    private static void collectIds(UIElementBuilder<?> element, Map<String, String> renames, Set<String> ids) {
+        String id = element.getEffectiveId();
+        ids.add(renames.getOrDefault(id, id));
+        for (UIElementBuilder<?> child : element.children) {
+            collectIds(child, renames, ids);
+        }
+        KeyedChildren.Snapshot rows = element.getKeyedChildren();
+        if (rows != null) {
+            for (UIElementBuilder<?> row : rows.rows().values()) {
+                collectIds(row, renames, ids);
+            }
+        }
+    }
+
+    /**
+     * Keeps the internal IDs of a new element and its descendants, unless the client already knows
+     * another element by one of them.
+     */
+    private void assignOwnIds(UIElementBuilder<?> element) {
+        String id = element.getEffectiveId();
+        newIds.put(id, oldClientIds.contains(id) ? freshId(id) : id);
+        for (UIElementBuilder<?> child : element.children) {
+            assignOwnIds(child);
+        }
+        KeyedChildren.Snapshot rows = element.getKeyedChildren();
+        if (rows != null) {
+            for (UIElementBuilder<?> row : rows.rows().values()) {
+                assignOwnIds(row);
+            }
+        }
+    }
+
+    private String freshId(String id) {
+        for (int i = 1; ; i++) {
+            String candidate = id + "R" + i;
+            if (usedIds.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private String oldClientId(UIElementBuilder<?> element) {
+        String id = element.getEffectiveId();
+        return oldIds.getOrDefault(id, id);
+    }
+
+    private String oldRootSelector(UIElementBuilder<?> element) {
+        return RecordedCommand.renameIds(element.getRootSelector(), oldIds);
+    }
+
+    private void diffChildren(UIElementBuilder<?> oldParent, UIElementBuilder<?> newParent,
+                              List<UIElementBuilder<?>> oldChildren, List<UIElementBuilder<?>> newChildren) {
+        // Index into oldChildren of the element each new child replaces, or -1.
+        int[] matches = match(oldChildren, newChildren);
+        for (int i = 0; i < newChildren.size(); i++) {
+            if (matches[i] >= 0) {
+                newIds.put(newChildren.get(i).getEffectiveId(), oldClientId(oldChildren.get(matches[i])));
+            }
+        }
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < newChildren.size(); i++) {
+            if (matches[i] >= 0) {
+                if (isPatchable(oldParent, oldChildren.get(matches[i]), newParent, newChildren.get(i))) {
+                    candidates.add(i);
+                }
+            }
+        }
+
+        // Kept elements must stay in the same relative order, as there is no move command.
+        int[] oldIndices = new int[candidates.size()];
+        for (int i = 0; i < oldIndices.length; i++) {
+            oldIndices[i] = matches[candidates.get(i)];
+        }
+        boolean[] kept = new boolean[newChildren.size()];
+        boolean[] oldKept = new boolean[oldChildren.size()];
+        for (int index : longestIncreasingSubsequence(oldIndices)) {
+            int newIndex = candidates.get(index);
+            kept[newIndex] = true;
+            oldKept[matches[newIndex]] = true;
+        }
+
+        for (int i = 0; i < oldChildren.size(); i++) {
+            if (!oldKept[i]) {
+                recorder.remove(oldRootSelector(oldChildren.get(i)));
+                emitted++;
+            }
+        }
+
+        String[] anchors = new String[newChildren.size()];
+        String anchor = null;
+        for (int i = newChildren.size() - 1; i >= 0; i--) {
+            anchors[i] = anchor;
+            if (kept[i]) {
+                anchor = RecordedCommand.renameIds(newChildren.get(i).getRootSelector(), newIds);
+            }
+        }
+
+        for (int i = 0; i < newChildren.size(); i++) {
+            UIElementBuilder<?> child = newChildren.get(i);
+            if (kept[i]) {
+                UIElementBuilder<?> previous = oldChildren.get(matches[i]);
+                patch(oldParent, previous, newParent, child);
+                diffChildren(previous, child, previous.children, child.children);
+            } else {
+                String clientId = newIds.get(child.getEffectiveId());
+                assignOwnIds(child);
+                if (clientId != null) {
+                    // Built again in place of the element it replaces, which is removed first.
+                    newIds.put(child.getEffectiveId(), clientId);
+                }
+                UICommandRecorder childCommands = new UICommandRecorder();
+                child.build(childCommands, child.parentIn(newParent));
+                childCommands.renameIds(0, newIds);
+                emitted += childCommands.size();
+                recorder.appendAll(childCommands, anchors[i]);
+            }
+        }
+    }
+
+    /**
+     * Pairs every new child with the old child of the same type and explicit ID, or failing that, with
+     * the next unmatched old child of the same type without an explicit ID.
+     */
+    private static int[] match(List<UIElementBuilder<?>> oldChildren, List<UIElementBuilder<?>> newChildren) {
+        int[] matches = new int[newChildren.size()];
+        boolean[] taken = new boolean[oldChildren.size()];
+        Map<String, Integer> byId = new HashMap<>();
+        for (int i = 0; i < oldChildren.size(); i++) {
+            if (oldChildren.get(i).hasExplicitId()) {
+                byId.put(oldChildren.get(i).getId(), i);
+            }
+        }
+
+        for (int i = 0; i < newChildren.size(); i++) {
+            matches[i] = -1;
+            UIElementBuilder<?> child = newChildren.get(i);
+            if (child.hasExplicitId()) {
+                Integer index = byId.get(child.getId());
+                if (index != null && !taken[index] && sameType(oldChildren.get(index), child)) {
+                    matches[i] = index;
+                    taken[index] = true;
+                }
+            }
+        }
+
+        int next = 0;
+        for (int i = 0; i < newChildren.size(); i++) {
+            UIElementBuilder<?> child = newChildren.get(i);
+            if (matches[i] >= 0 || child.hasExplicitId()) {
+                continue;
+            }
+            for (int j = next; j < oldChildren.size(); j++) {
+                UIElementBuilder<?> candidate = oldChildren.get(j);
+                if (!taken[j] && !candidate.hasExplicitId() && sameType(candidate, child)) {
+                    matches[i] = j;
+                    taken[j] = true;
+                    next = j + 1;
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static boolean sameType(UIElementBuilder<?> a, UIElementBuilder<?> b) {
+        return a.getClass() == b.getClass()
+                && Objects.equals(a.elementPath, b.elementPath)
+                && Objects.equals(a.typeSelector, b.typeSelector);
+    }
+
+    /**
+     * @return true if the new element can be reached from the old one with set commands alone.
+     */
+    private boolean isPatchable(UIElementBuilder<?> oldParent, UIElementBuilder<?> previous,
+                                UIElementBuilder<?> newParent, UIElementBuilder<?> next) {
+        Snapshot before = oldSnapshot(previous, oldParent);
+        Snapshot after = newSnapshot(next, newParent);
+        return before.creation.equals(after.creation)
+                && sameCallbacks(before.callbacks, after.callbacks)
+                && after.properties.keySet().containsAll(before.properties.keySet());
+    }
+
+    private void patch(UIElementBuilder<?> oldParent, UIElementBuilder<?> previous,
+                       UIElementBuilder<?> newParent, UIElementBuilder<?> next) {
+        Snapshot before = oldSnapshot(previous, oldParent);
+        Snapshot after = newSnapshot(next, newParent);
+        // Changes not sent yet were never compared, so every property of the element is sent.
+        boolean unsent = previous.changedSince(sentVersion);
+        for (Map.Entry<String, Object> property : after.properties.entrySet()) {
+            Object value = property.getValue();
+            if (!unsent && !after.bound.contains(property.getKey())
+                    && value.equals(before.properties.get(property.getKey()))) {
+                continue;
+            }
+            if (after.objects.contains(property.getKey())) {
+                recorder.setObject(property.getKey(), value);
+            } else {
+                recorder.setValue(property.getKey(), value);
+            }
+            emitted++;
+        }
+    }
+
+    /**
+     * @param parent the element the given element is built inside, or null if it is a top level element.
+     */
+    private Snapshot oldSnapshot(UIElementBuilder<?> element, UIElementBuilder<?> parent) {
+        return oldSnapshots.computeIfAbsent(element, e -> Snapshot.of(e, e.parentIn(parent), slotValues, oldIds));
+    }
+
+    private Snapshot newSnapshot(UIElementBuilder<?> element, UIElementBuilder<?> parent) {
+        return newSnapshots.computeIfAbsent(element, e -> Snapshot.of(e, e.parentIn(parent), slotValues, newIds));
+    }
+
+    /**
+     * @return true if both lists hold the same edit callbacks, see {@link #sameCallback(Object, Object)}.
+     */
+    static boolean sameCallbacks(List<?> a, List<?> b) {
+        if (a == null || b == null) {
+            return a == b || (a == null ? b.isEmpty() : a.isEmpty());
+        }
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!sameCallback(a.get(i), b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares two edit callbacks. A callback created anew, such as the ones the HTML parser adds for
+     * every parse, is only the same as another if both were registered with equal keys.
+     */
+    private static boolean sameCallback(Object a, Object b) {
+        return a == b || (a instanceof KeyedEdit keyedA && b instanceof KeyedEdit keyedB
+                && Objects.equals(keyedA.key(), keyedB.key()));
+    }
+
+    /**
+     * Finds the longest run of values that are in increasing order, used to keep as many elements as
+     * possible in place when siblings are reordered.
+     *
+     * @param values the values, e.g. the previous positions of elements in their new order.
+     * @return the indices into {@code values} of the run, in increasing order.
+     */
+    static List<Integer> longestIncreasingSubsequence(int[] values) {
+        int n = values.length;
+        if (n == 0) {
+            return List.of();
+        }
+        int[] tails = new int[n];
+        int[] parents = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            parents[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+
+        Integer[] run = new Integer[length];
+        for (int i = tails[length - 1], k = length - 1; i >= 0; i = parents[i], k--) {
+            run[k] = i;
+        }
+        return List.of(run);
+    }
+
+    /**
+     * The commands of a single element, without its children, grouped by what they do.
+     */
+    private static final class Snapshot {
+        private final List<String> creation = new ArrayList<>();
+        private final List<Object> callbacks = new ArrayList<>();
+        private final Map<String, Object> properties = new HashMap<>();
+        private final Set<String> objects = new HashSet<>();
+        private final Set<String> bound = new HashSet<>();
+
+        /**
+         * @param renames the IDs the client knows the elements by, see {@link UICommandRecorder#renameIds(int, Map)}.
+         */
+        static Snapshot of(UIElementBuilder<?> element, String parent, Map<String, Object> slotValues, Map<String, String> renames) {
+            UICommandRecorder commands = UICommandRecorderPool.acquire();
+            try {
+                element.buildWithoutChildren(commands, parent);
+                commands.renameIds(0, renames);
+                Snapshot snapshot = new Snapshot();
+                for (int i = 0; i < commands.size(); i++) {
+                    switch (commands.kind(i)) {
+                        case SET, SET_BOOLEAN, SET_INT, SET_DOUBLE, SET_OBJECT -> {
+                            Object value = commands.resolveValue(i, slotValues);
+                            if (value != null) {
+                                snapshot.properties.put(commands.selector(i), value);
+                                if (commands.kind(i) == RecordedCommand.Kind.SET_OBJECT) {
+                                    snapshot.objects.add(commands.selector(i));
+                                }
+                                if (commands.isSlot(i) && commands.owner(i).isBound(commands.property(i))) {
+                                    snapshot.bound.add(commands.selector(i));
+                                }
+                            }
+                        }
+                        case EDIT, EDIT_ELEMENT -> snapshot.callbacks.add(commands.value(i));
+                        case EVENT_BINDING -> {
+                            // Never sent for HUDs.
+                        }
+                        default -> snapshot.creation.add(commands.kind(i) + " " + commands.selector(i) + " " + commands.value(i));
+                    }
+                }
+                return snapshot;
+            } finally {
+                UICommandRecorderPool.release(commands);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package au.ellie.hyui.builders;
+
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Lets HyUI share the player's custom HUD slot with another mod's HUD manager, instead of replacing it.
+ *
+ * Register an implementation with {@link HyUIMultiHud#registerExternalManager(ExternalHudManager)}.
+ * When a HUD is shown and the player's custom HUD is one the manager {@link #manages(CustomUIHud) manages},
+ * the manager is asked to host HyUI's multi-hud inside it.
+ */
+public interface ExternalHudManager {
+    /**
+     * @param customHud the player's current custom HUD.
+     * @return true if the given HUD is one of this manager's, which can host a HyUI multi-hud.
+     */
+    boolean manages(@Nonnull CustomUIHud customHud);
+
+    /**
+     * Returns the HyUI multi-hud hosted by the given manager HUD, creating and adding one if there is none yet.
+     *
+     * @param customHud the player's current custom HUD, for which {@link #manages(CustomUIHud)} returned true.
+     * @param playerRef the player.
+     * @return the hosted multi-hud.
+     */
+    @Nonnull
+    HyUIMultiHud getOrCreateMultiHud(@Nonnull CustomUIHud customHud, @Nonnull PlayerRef playerRef);
+
+    /**
+     * Whether the multi-hud may redraw itself by sending a full build, for example when a refresh
+     * changes more than text, values and visibility. Managers that build their children themselves,
+     * and would lose the other HUDs on such a redraw, should return false (default), in which case
+     * those changes are only sent when the HUD is redrawn explicitly.
+     *
+     * @return true if the hosted multi-hud may redraw itself.
+     */
+    default boolean allowsRedraw() {
+        return false;
+    }
+}
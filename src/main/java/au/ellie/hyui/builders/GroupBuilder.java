@@ -3,8 +3,10 @@ package au.ellie.hyui.builders;
 import au.ellie.hyui.HyUIPlugin;
 import au.ellie.hyui.elements.UIElements;
 import au.ellie.hyui.theme.Theme;
-import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
-import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
 
 /**
  * Builder for creating group UI elements. 
@@ -42,27 +44,52 @@ public class GroupBuilder extends UIElementBuilder<GroupBuilder> {
      * @return This builder instance for method chaining.
      */
     public GroupBuilder withLayoutMode(String layoutMode) {
+        checkNotFrozen();
         this.layoutMode = layoutMode;
+        markDirty(STRUCTURE);
+        return this;
+    }
+
+    /**
+     * Replaces the keyed children of the group, for lists such as party members or quest logs.
+     * Children whose key already exists are kept, so the factory is only called for new keys.
+     * When the HUD is flushed, only the rows that were added, removed or moved are sent.
+     * Keyed children are placed after any children added with {@code addChild}.
+     *
+     * @param keys       the keys of the children, in order.
+     * @param rowFactory creates the child for a new key.
+     * @return This builder instance for method chaining.
+     */
+    public GroupBuilder withKeyedChildren(List<String> keys, Function<String, ? extends UIElementBuilder<?>> rowFactory) {
+        updateKeyedChildren(keys, rowFactory);
         return this;
     }
 
+    /**
+     * @param key the key of the child.
+     * @return the child added for the key by {@link #withKeyedChildren(List, Function)}, if any.
+     */
+    public Optional<UIElementBuilder<?>> getKeyedChild(String key) {
+        return super.getKeyedChild(key);
+    }
+
     @Override
     protected boolean supportsStyling() {
         return false;
     }
 
     @Override
-    protected void onBuild(UICommandBuilder commands, UIEventBuilder events) {
+    protected void onBuild(UICommandRecorder commands) {
         String selector = getSelector();
         if (selector == null) return;
 
         if (layoutMode != null) {
-            HyUIPlugin.getLog().logInfo("Setting LayoutMode: " + layoutMode + " for " + selector);
+            HyUIPlugin.getLog().logFine("Setting LayoutMode: %s for %s", layoutMode, selector);
             commands.set(selector + ".LayoutMode", layoutMode);
         }
 
         if (hyUIStyle == null && style != null) {
-            HyUIPlugin.getLog().logInfo("Setting Style: " + style + " for " + selector);
+            HyUIPlugin.getLog().logFine("Setting Style: %s for %s", style, selector);
             commands.set(selector + ".Style", style);
         }
     }
@@ -10,15 +10,15 @@ import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import org.checkerframework.checker.nullness.compatqual.NonNullDecl;
 
 import javax.annotation.Nonnull;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
 public class HudBuilder extends InterfaceBuilder<HudBuilder> {
     private final PlayerRef playerRef;
     private long refreshRateMs = 0;
     private Consumer<HyUIHud> refreshListener;
+    private UIFrameScheduler.Priority priority = UIFrameScheduler.Priority.NORMAL;
+    private HudRefreshDispatcher.Mode refreshMode = HudRefreshDispatcher.Mode.WORLD_THREAD;
 
     public HudBuilder(PlayerRef playerRef) {
         this.playerRef = playerRef;
@@ -42,6 +42,31 @@ public class HudBuilder extends InterfaceBuilder<HudBuilder> {
         return this;
     }
 
+    /**
+     * Sets the priority of the HUD's refreshes and flushes when the server wide UI budget is spent.
+     * Decorative HUDs can use {@link UIFrameScheduler.Priority#DECORATIVE} to lag behind under load.
+     *
+     * @param priority The priority, {@link UIFrameScheduler.Priority#NORMAL} by default.
+     * @return The HudBuilder instance.
+     */
+    public HudBuilder withPriority(UIFrameScheduler.Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Sets where the refresh listener runs. By default it runs on the thread of the player's world,
+     * so it can use the entity store. Listeners that only compute can use
+     * {@link HudRefreshDispatcher.Mode#COMPUTE_POOL} to keep the world thread free.
+     *
+     * @param refreshMode The mode, {@link HudRefreshDispatcher.Mode#WORLD_THREAD} by default.
+     * @return The HudBuilder instance.
+     */
+    public HudBuilder withRefreshMode(HudRefreshDispatcher.Mode refreshMode) {
+        this.refreshMode = refreshMode;
+        return this;
+    }
+
     /**
      * Registers a callback to be triggered when the HUD is refreshed.
      *
@@ -92,9 +117,22 @@ public class HudBuilder extends InterfaceBuilder<HudBuilder> {
      * @return The created HyUIHud instance.
      */
     public HyUIHud show(@Nonnull PlayerRef playerRefParam, Store<EntityStore> store) {
+        return show(playerRefParam, store, null);
+    }
+
+    /**
+     * Shows the HUD for the specified player, patching the dynamic slots of the HUD
+     * with per-player values. This is intended to be used with {@code compile()}.
+     *
+     * @param playerRefParam The player reference for whom the HUD should be shown.
+     * @param store The entity store containing player data.
+     * @param slotValues Slot values keyed by {@code UICommandProgram.slotKey(elementId, property)}, may be null.
+     * @return The created HyUIHud instance.
+     */
+    public HyUIHud show(@Nonnull PlayerRef playerRefParam, Store<EntityStore> store, Map<String, Object> slotValues) {
         Player playerComponent = store.getComponent(playerRefParam.getReference(), Player.getComponentType());
         HyUIMultiHud multiHudToUse = getOrCreateMultiHud(playerComponent, playerRefParam);
-        return addTo(playerRefParam, multiHudToUse, "HUD_" + System.currentTimeMillis());
+        return addTo(playerRefParam, multiHudToUse, "HUD_" + System.currentTimeMillis(), slotValues);
     }
 
     
@@ -107,16 +145,44 @@ public class HudBuilder extends InterfaceBuilder<HudBuilder> {
      * @return The built HyUIHud instance.
      */
     public HyUIHud addTo(@Nonnull PlayerRef playerRefParam, @Nonnull HyUIMultiHud multiHud, String name) {
-        var hyUIHud = new HyUIHud(playerRefParam, uiFile, getTopLevelElements(), editCallbacks);
+        return addTo(playerRefParam, multiHud, name, null);
+    }
+
+    /**
+     * Registers this HUD with a multi-hud manager, patching the dynamic slots of the HUD
+     * with per-player values.
+     *
+     * @param playerRefParam The player reference for whom the HUD should be shown.
+     * @param multiHud The multi-hud manager to register with.
+     * @param name     A unique name for this HUD component.
+     * @param slotValues Slot values keyed by {@code UICommandProgram.slotKey(elementId, property)}, may be null.
+     * @return The built HyUIHud instance.
+     */
+    public HyUIHud addTo(@Nonnull PlayerRef playerRefParam, @Nonnull HyUIMultiHud multiHud, String name, Map<String, Object> slotValues) {
+        var hyUIHud = new HyUIHud(playerRefParam, uiFile, getTopLevelElements(), editCallbacks, program, slotValues);
+        hyUIHud.delegate.setParallelBuildThreshold(parallelBuildThreshold);
         hyUIHud.setRefreshRateMs(refreshRateMs);
         hyUIHud.setRefreshListener(refreshListener);
-        HyUIPlugin.getLog().logInfo("Adding to a MultiHud: " + name);
+        hyUIHud.setPriority(priority);
+        hyUIHud.setRefreshMode(refreshMode);
+        HyUIPlugin.getLog().logInfo("Adding to a MultiHud: %s", name);
         
         // Set HUD itself will redraw the parent and itself by proxy.
         multiHud.setHud(name, hyUIHud);
         return hyUIHud;
     }
 
+    /**
+     * Creates a broadcast HUD from this builder, shown to every player subscribed to it.
+     * Changes are built once and the same commands are sent to every subscriber.
+     * The refresh rate and listener of this builder are not used, see {@link HyUIBroadcastHud#withRefreshRate(long)}.
+     *
+     * @return The broadcast HUD, with no subscribers yet.
+     */
+    public HyUIBroadcastHud toBroadcast() {
+        return new HyUIBroadcastHud(uiFile, getTopLevelElements(), editCallbacks);
+    }
+
     /**
      * You can update an existing HUD with this builder.
      * @param hudRef The HyUIHud instance to update.
@@ -126,7 +192,7 @@ public class HudBuilder extends InterfaceBuilder<HudBuilder> {
     }
 
     @NonNullDecl
-    private static HyUIMultiHud getOrCreateMultiHud(@Nonnull Player player,
+    static HyUIMultiHud getOrCreateMultiHud(@Nonnull Player player,
                                                     @NonNullDecl PlayerRef playerRefParam) {
         HudManager hudManager = player.getHudManager();
         CustomUIHud currentHud = hudManager.getCustomHud();
@@ -135,26 +201,11 @@ public class HudBuilder extends InterfaceBuilder<HudBuilder> {
 
         if (currentHud instanceof HyUIMultiHud) {
             multiHudToUse = (HyUIMultiHud) currentHud;
-        } else if (currentHud != null && "MultipleCustomUIHud".equals(currentHud.getClass().getSimpleName())) {
-            // We support multiple hud mod by adding our own multi-hud to the existing one :3.
-            try {
-                Method getCustomHudsMethod = currentHud.getClass().getDeclaredMethod("getCustomHuds");
-                getCustomHudsMethod.setAccessible(true);
-                @SuppressWarnings("unchecked")
-                HashMap<String, CustomUIHud> customHuds =
-                        (HashMap<String, CustomUIHud>) getCustomHudsMethod.invoke(currentHud);
-
-                CustomUIHud existing = customHuds.get("HyUIHUD");
-                if (existing instanceof HyUIMultiHud) {
-                    multiHudToUse = (HyUIMultiHud) existing;
-                } else {
-                    multiHudToUse = new HyUIMultiHud(playerRefParam);
-                    customHuds.put("HyUIHUD", multiHudToUse);
-                }
-            } catch (NoSuchMethodException | InvocationTargetException e) {
-                throw new RuntimeException(e);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
+        } else if (currentHud != null) {
+            ExternalHudManager manager = HyUIMultiHud.findExternalManager(currentHud);
+            if (manager != null) {
+                multiHudToUse = manager.getOrCreateMultiHud(currentHud, playerRefParam);
+                multiHudToUse.setExternalManager(manager);
             }
         }
 
@@ -0,0 +1,210 @@
+package au.ellie.hyui.builders;
+
+import au.ellie.hyui.HyUIPlugin;
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs the refresh listeners of HUDs, see {@link HudBuilder#onRefresh(java.util.function.Consumer)}.
+ *
+ * Refreshes are dispatched on the thread of the world their player is in, see {@link UIFrameScheduler}.
+ * By default a listener runs right there, so it can safely read and change the entity store, and
+ * its time counts against the world's UI budget. Listeners that only compute, and never touch the world, can run on a shared thread
+ * pool instead, see {@link Mode#COMPUTE_POOL}. Listeners that may block, for example on a database,
+ * can run on their own virtual threads with a timeout, see {@link Mode#VIRTUAL_THREAD}.
+ */
+public final class HudRefreshDispatcher {
+    /**
+     * Where a HUD's refresh listener runs.
+     */
+    public enum Mode {
+        /**
+         * On the thread of the player's world, the default.
+         */
+        WORLD_THREAD,
+        /**
+         * On the shared compute pool, for listeners that never touch the world or the entity store.
+         */
+        COMPUTE_POOL,
+        /**
+         * On a virtual thread of its own, for listeners that may block. A listener that does not finish
+         * within the timeout is reported, and the HUD is not flushed or refreshed again until it does.
+         */
+        VIRTUAL_THREAD
+    }
+
+    /**
+     * The default number of threads of the compute pool.
+     */
+    public static final int DEFAULT_COMPUTE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * The default time a listener using {@link Mode#VIRTUAL_THREAD} may run, in milliseconds.
+     */
+    public static final long DEFAULT_LISTENER_TIMEOUT_MS = 500;
+
+    private static final Set<HyUIHud> running = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong overruns = new AtomicLong();
+    private static final AtomicLong skipped = new AtomicLong();
+    private static volatile long listenerTimeoutMs = DEFAULT_LISTENER_TIMEOUT_MS;
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static volatile ExecutorService computePool = newComputePool(DEFAULT_COMPUTE_THREADS);
+
+    private HudRefreshDispatcher() {
+    }
+
+    /**
+     * Sets how many threads run the listeners of HUDs using {@link Mode#COMPUTE_POOL}.
+     * Listeners already queued on the previous pool still run.
+     *
+     * @param threads the number of threads, at least 1.
+     */
+    public static void setComputeThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The compute pool needs at least one thread.");
+        }
+        ExecutorService previous = computePool;
+        computePool = newComputePool(threads);
+        previous.shutdown();
+    }
+
+    /**
+     * Sets how long a listener using {@link Mode#VIRTUAL_THREAD} may run before it is reported and its HUD skipped.
+     *
+     * @param millis the timeout in milliseconds.
+     */
+    public static void setListenerTimeoutMillis(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("The listener timeout must be positive.");
+        }
+        listenerTimeoutMs = millis;
+    }
+
+    public static long getListenerTimeoutMillis() {
+        return listenerTimeoutMs;
+    }
+
+    /**
+     * @return the number of listeners that ran past the timeout, see {@link Mode#VIRTUAL_THREAD}.
+     */
+    public static long getOverrunCount() {
+        return overruns.get();
+    }
+
+    /**
+     * @return the number of refreshes skipped because the previous listener of the HUD was still running.
+     */
+    public static long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * Calls the refresh listeners of the given HUDs where their mode runs them, then hands the HUDs
+     * that were refreshed to the given callback. Called on the thread of the player's world.
+     *
+     * @param playerRef   the player whose HUDs are refreshed.
+     * @param mode        where to run the listeners.
+     * @param huds        the HUDs to refresh.
+     * @param onRefreshed called with the refreshed HUDs, on the thread that ran the listeners.
+     * @return false if the player is no longer in a world, in which case nothing runs.
+     */
+    static boolean refresh(PlayerRef playerRef, Mode mode, List<HyUIHud> huds, Consumer<List<HyUIHud>> onRefreshed) {
+        Ref<EntityStore> ref = playerRef.getReference();
+        if (ref == null) {
+            return false;
+        }
+        if (mode == Mode.VIRTUAL_THREAD) {
+            Thread.ofVirtual().name("HyUI-Refresh").start(() -> refreshIsolated(huds, onRefreshed));
+            return true;
+        }
+        Runnable work = () -> {
+            for (HyUIHud hud : huds) {
+                run(hud::triggerRefresh);
+            }
+            onRefreshed.accept(huds);
+        };
+        if (mode == Mode.COMPUTE_POOL) {
+            computePool.execute(() -> run(work));
+        } else {
+            work.run();
+        }
+        return true;
+    }
+
+    /**
+     * Starts every listener on its own virtual thread and waits for them until the timeout.
+     * Listeners that overran are left running, but their HUDs are not flushed with the others.
+     */
+    private static void refreshIsolated(List<HyUIHud> huds, Consumer<List<HyUIHud>> onRefreshed) {
+        long timeout = listenerTimeoutMs;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Map<HyUIHud, Thread> started = new LinkedHashMap<>();
+        for (HyUIHud hud : huds) {
+            if (!running.add(hud)) {
+                skipped.incrementAndGet();
+                HyUIPlugin.getLog().logFine("Skipping refresh of %s, its previous listener is still running", hud.getMountSelector());
+                continue;
+            }
+            started.put(hud, Thread.ofVirtual().name("HyUI-Refresh-Listener").start(() -> {
+                try {
+                    run(hud::triggerRefresh);
+                } finally {
+                    running.remove(hud);
+                }
+            }));
+        }
+
+        List<HyUIHud> refreshed = new ArrayList<>(started.size());
+        try {
+            for (Map.Entry<HyUIHud, Thread> entry : started.entrySet()) {
+                long remaining = deadline - System.nanoTime();
+                Thread thread = entry.getValue();
+                if (remaining > 0 ? thread.join(Duration.ofNanos(remaining)) : !thread.isAlive()) {
+                    refreshed.add(entry.getKey());
+                } else {
+                    overruns.incrementAndGet();
+                    HyUIPlugin.getLog().logWarning("HUD refresh listener of %s overran its timeout of %s ms, skipping it this cycle",
+                            entry.getKey().getMountSelector(), timeout);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!refreshed.isEmpty()) {
+            onRefreshed.accept(refreshed);
+        }
+    }
+
+    private static void run(Runnable work) {
+        try {
+            work.run();
+        } catch (RuntimeException e) {
+            // One failing listener must not stop the other HUDs of the batch.
+            HyUIPlugin.getLog().logWarning("HUD refresh failed: %s %s", e.getClass().getName(), e.getMessage());
+        }
+    }
+
+    private static ExecutorService newComputePool(int threads) {
+        return Executors.newFixedThreadPool(threads, work -> {
+            Thread thread = new Thread(work, "HyUI-Refresh-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
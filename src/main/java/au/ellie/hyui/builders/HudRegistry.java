@@ -0,0 +1,144 @@
+package au.ellie.hyui.builders;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable, ordered snapshot of the HUDs of a multi-hud, see {@link HyUIMultiHud}.
+ *
+ * Every change returns a new registry, so the multi-hud can swap registries atomically and iterate
+ * a snapshot without holding a lock. Shown HUDs keep the order in which they were added or shown,
+ * and a hidden HUD keeps its name until it is shown again or removed.
+ */
+final class HudRegistry {
+    /**
+     * The empty registry.
+     */
+    static final HudRegistry EMPTY = new HudRegistry(List.of());
+
+    /**
+     * A HUD registered under a name, which is either shown or hidden.
+     */
+    record Entry(String name, HyUIHud hud, boolean hidden) {
+    }
+
+    private final List<Entry> entries;
+
+    private HudRegistry(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Registers a shown HUD, replacing the HUD registered under the same name in its place.
+     */
+    HudRegistry put(String name, HyUIHud hud) {
+        List<Entry> next = new ArrayList<>(entries);
+        int index = indexOf(name);
+        if (index >= 0 && !entries.get(index).hidden()) {
+            next.set(index, new Entry(name, hud, false));
+        } else {
+            if (index >= 0) {
+                next.remove(index);
+            }
+            next.add(new Entry(name, hud, false));
+        }
+        return new HudRegistry(List.copyOf(next));
+    }
+
+    /**
+     * Removes the HUD registered under the given name, whether it is shown or hidden.
+     */
+    HudRegistry remove(String name) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return this;
+        }
+        List<Entry> next = new ArrayList<>(entries);
+        next.remove(index);
+        return new HudRegistry(List.copyOf(next));
+    }
+
+    /**
+     * Hides the HUD registered under the given name, if it is shown.
+     */
+    HudRegistry hide(String name) {
+        int index = indexOf(name);
+        if (index < 0 || entries.get(index).hidden()) {
+            return this;
+        }
+        List<Entry> next = new ArrayList<>(entries);
+        next.set(index, new Entry(name, entries.get(index).hud(), true));
+        return new HudRegistry(List.copyOf(next));
+    }
+
+    /**
+     * Shows the HUD registered under the given name if it is hidden, after every other shown HUD.
+     */
+    HudRegistry show(String name) {
+        int index = indexOf(name);
+        if (index < 0 || !entries.get(index).hidden()) {
+            return this;
+        }
+        List<Entry> next = new ArrayList<>(entries);
+        next.remove(index);
+        next.add(new Entry(name, entries.get(index).hud(), false));
+        return new HudRegistry(List.copyOf(next));
+    }
+
+    /**
+     * @return the entry registered under the given name, or null.
+     */
+    Entry get(String name) {
+        int index = indexOf(name);
+        return index >= 0 ? entries.get(index) : null;
+    }
+
+    /**
+     * @return the entry of the given HUD instance, or null.
+     */
+    Entry find(HyUIHud hud) {
+        for (Entry entry : entries) {
+            if (entry.hud() == hud) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the given HUD instance is registered and shown.
+     */
+    boolean isShown(HyUIHud hud) {
+        Entry entry = find(hud);
+        return entry != null && !entry.hidden();
+    }
+
+    /**
+     * @return the shown HUDs, in order.
+     */
+    List<HyUIHud> shown() {
+        List<HyUIHud> shown = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (!entry.hidden()) {
+                shown.add(entry.hud());
+            }
+        }
+        return shown;
+    }
+
+    /**
+     * @return every entry, shown and hidden.
+     */
+    List<Entry> entries() {
+        return entries;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).name().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -3,6 +3,8 @@ package au.ellie.hyui.builders;
 import com.hypixel.hytale.server.core.ui.Anchor;
 import com.hypixel.hytale.server.core.ui.Value;
 
+import java.util.Arrays;
+
 public class HyUIAnchor {
     private int left = -1;
     private int right = -1;
@@ -103,4 +105,27 @@ public class HyUIAnchor {
         if (maxWidth >= 0) anchor.setMaxWidth(Value.of(maxWidth));
         return anchor;
     }
+
+    /**
+     * @return a copy of this anchor, unaffected by later changes to it.
+     */
+    public HyUIAnchor copy() {
+        return new HyUIAnchor(left, right, top, bottom, height, full, horizontal, vertical, width, minWidth, maxWidth);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HyUIAnchor other)) return false;
+        return Arrays.equals(values(), other.values());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values());
+    }
+
+    private int[] values() {
+        return new int[]{left, right, top, bottom, height, full, horizontal, vertical, width, minWidth, maxWidth};
+    }
 }
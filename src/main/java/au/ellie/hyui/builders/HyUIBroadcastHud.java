@@ -0,0 +1,360 @@
+package au.ellie.hyui.builders;
+
+import au.ellie.hyui.HyUIPlugin;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A HUD that is shown to many players at once, such as event timers or boss bars.
+ *
+ * The element tree is shared by every subscriber. Changes are compiled into a single set of
+ * commands once, which is then sent to every subscribed player's multi-hud, instead of each
+ * player rebuilding their own copy of the HUD.
+ */
+public class HyUIBroadcastHud {
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final int index = COUNTER.getAndIncrement();
+    private final String name = "BROADCAST_" + index;
+    private final String mountId = "HyUIBroadcastMount" + index;
+    private final String uiFile;
+    private final List<UIElementBuilder<?>> elements;
+    private final List<Consumer<UICommandBuilder>> editCallbacks;
+    private final Map<PlayerRef, HyUIHud> subscribers = new ConcurrentHashMap<>();
+    private volatile UICommandProgram program;
+    private final Map<String, Object> sentBindingValues = new ConcurrentHashMap<>();
+    private final Map<String, Object> sendingBindingValues = new HashMap<>();
+    private final Map<UIElementBuilder<?>, KeyedChildren.Snapshot> sentRows = new IdentityHashMap<>();
+    private final Map<UIElementBuilder<?>, KeyedChildren.Snapshot> sendingRows = new IdentityHashMap<>();
+    // The version of the changes every subscriber was sent, see UIElementBuilder#currentVersion().
+    private long sentVersion;
+
+    private long refreshRateMs;
+    private Consumer<HyUIBroadcastHud> refreshListener;
+    private ScheduledFuture<?> refreshTask;
+
+    HyUIBroadcastHud(String uiFile, List<UIElementBuilder<?>> elements, List<Consumer<UICommandBuilder>> editCallbacks) {
+        this.uiFile = uiFile;
+        this.elements = elements;
+        this.editCallbacks = editCallbacks;
+        // Everything is sent on the first build of each subscriber.
+        this.sentVersion = UIElementBuilder.currentVersion();
+        this.program = UICommandProgram.compile(uiFile, elements, editCallbacks);
+        this.program.captureBindingValues(null, sentBindingValues);
+        this.program.captureKeyedChildren(sentRows);
+        UILifecycle.track(this);
+    }
+
+    /**
+     * Shows this HUD to a player, adding it to their multi-hud.
+     *
+     * @param playerRef The player to show the HUD to.
+     * @param store     The entity store containing player data.
+     * @return false if the player is already subscribed.
+     */
+    public boolean subscribe(@Nonnull PlayerRef playerRef, @Nonnull Store<EntityStore> store) {
+        if (subscribers.containsKey(playerRef)) {
+            return false;
+        }
+        Player playerComponent = store.getComponent(playerRef.getReference(), Player.getComponentType());
+        return subscribe(playerRef, HudBuilder.getOrCreateMultiHud(playerComponent, playerRef));
+    }
+
+    /**
+     * Shows this HUD to a player, adding it to the given multi-hud.
+     *
+     * @param playerRef The player to show the HUD to.
+     * @param multiHud  The player's multi-hud.
+     * @return false if the player is already subscribed.
+     */
+    public boolean subscribe(@Nonnull PlayerRef playerRef, @Nonnull HyUIMultiHud multiHud) {
+        // Every subscriber uses the same mount group, so the same partial update fits all of them.
+        HyUIHud hud = new HyUIHud(playerRef, mountId, uiFile, elements, editCallbacks, program, null);
+        // The subscriber shares this HUD's elements, so its flushes are sent to every subscriber at once.
+        hud.setBroadcast(this);
+        if (subscribers.putIfAbsent(playerRef, hud) != null) {
+            return false;
+        }
+        HyUIPlugin.getLog().logInfo("Subscribing player to broadcast HUD: %s", name);
+        multiHud.setHud(name, hud);
+        return true;
+    }
+
+    /**
+     * Removes this HUD from a player's screen.
+     *
+     * @param playerRef The player to remove the HUD from.
+     * @return false if the player was not subscribed.
+     */
+    public boolean unsubscribe(@Nonnull PlayerRef playerRef) {
+        HyUIHud hud = subscribers.remove(playerRef);
+        if (hud == null) {
+            return false;
+        }
+        hud.removeFromMultiHud();
+        return true;
+    }
+
+    /**
+     * Forgets a player that is gone, without sending anything to them, see {@link UILifecycle#releasePlayer(PlayerRef)}.
+     *
+     * @param playerRef The player to forget.
+     */
+    void release(@Nonnull PlayerRef playerRef) {
+        HyUIHud hud = subscribers.remove(playerRef);
+        if (hud != null) {
+            hud.showWithMultiHud(null);
+        }
+    }
+
+    public boolean isSubscribed(PlayerRef playerRef) {
+        return subscribers.containsKey(playerRef);
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Retrieves a shared element builder by its ID. Changes to it are sent to every subscriber
+     * on the next {@link #flush()}.
+     */
+    public Optional<UIElementBuilder<?>> getById(String id) {
+        for (UIElementBuilder<?> element : elements) {
+            Optional<UIElementBuilder<?>> found = findByIdRecursive(element, id);
+            if (found.isPresent()) return found;
+        }
+        return Optional.empty();
+    }
+
+    public <E extends UIElementBuilder<E>> Optional<E> getById(String id, Class<E> clazz) {
+        return getById(id).filter(clazz::isInstance).map(clazz::cast);
+    }
+
+    /**
+     * Sends everything that changed since the last flush to all subscribers.
+     *
+     * Text, values and visibility, including bound properties whose value changed, are written into
+     * a single command builder, which is sent as is to every subscriber. Structural changes recompile the HUD once and redraw each subscriber.
+     */
+    public synchronized void flush() {
+        UICommandRecorder recorder = UICommandRecorderPool.acquire();
+        try {
+            flush(recorder);
+        } finally {
+            UICommandRecorderPool.release(recorder);
+        }
+    }
+
+    /**
+     * Queues a {@link #flush()} within the server wide UI budget. Requests made before it runs are merged.
+     */
+    public void requestFlush() {
+        UIFrameScheduler.submit(UIFrameScheduler.Priority.NORMAL, this, this::flush);
+    }
+
+    private void flush(UICommandRecorder recorder) {
+        recorder.mountInto("#" + mountId);
+        long version = UIElementBuilder.currentVersion();
+        boolean childrenChanged = program.hasKeyedChildChanges(sentVersion);
+        int bound = 0;
+        int written = -1;
+        if (!program.hasUnslottedChanges(sentVersion) || (!childrenChanged && isStructureUnchanged())) {
+            sendingBindingValues.clear();
+            sendingRows.clear();
+            bound = program.replayChangedBindings(recorder, null, sentBindingValues, sendingBindingValues);
+            written = program.replayChangedSlots(recorder, null, null, sentVersion, sentRows, sendingRows);
+        }
+        if (written < 0) {
+            if (HyUIPlugin.getLog().isInfoEnabled()) {
+                HyUIPlugin.getLog().logInfo("BROADCAST: Structural change, redrawing %s subscribers", subscribers.size());
+            }
+            UICommandProgram recompiled = UICommandProgram.compile(uiFile, elements, editCallbacks);
+            recompiled.captureBindingValues(null, sentBindingValues);
+            recompiled.captureKeyedChildren(sentRows);
+            this.program = recompiled;
+            this.sentVersion = version;
+            for (HyUIHud hud : subscribers.values()) {
+                hud.delegate.setProgram(recompiled);
+                hud.redraw();
+            }
+            return;
+        }
+        int shared = written + bound;
+        if (shared > 0 && HyUIPlugin.getLog().isInfoEnabled()) {
+            HyUIPlugin.getLog().logInfo("BROADCAST: Sending %s changed properties to %s subscribers", shared, subscribers.size());
+        }
+        Set<String> sharedSelectors = shared > 0 ? selectorsOf(recorder) : Set.of();
+        UICommandBuilder builder = shared > 0 ? recorder.toCommandBuilder() : null;
+        UICommandRecorder own = UICommandRecorderPool.acquire();
+        try {
+            for (HyUIHud hud : subscribers.values()) {
+                own.reset();
+                own.mountInto("#" + mountId);
+                // The subscriber's own overrides go with the shared changes, which may have overwritten them.
+                int overrides = hud.delegate.buildOverrides(own, program, sharedSelectors);
+                if (overrides < 0) {
+                    hud.redraw();
+                    continue;
+                }
+                if (shared == 0 && overrides == 0) {
+                    continue;
+                }
+                HyUIMultiHud parent = hud.getParentMultiHud();
+                if (parent != null && !parent.tryAcquirePacket()) {
+                    // Over the player's budget, the pending redraw will carry the newest state.
+                    parent.requestRedraw(hud);
+                    continue;
+                }
+                UICommandBuilder packet = builder;
+                if (overrides > 0) {
+                    packet = shared > 0 ? recorder.toCommandBuilder() : new UICommandBuilder();
+                    own.replay(packet, null);
+                }
+                UIFrameScheduler.recordCommands(null, shared + overrides);
+                hud.update(false, packet);
+                hud.delegate.markSent();
+                hud.delegate.markSent(version, sendingRows);
+            }
+        } finally {
+            UICommandRecorderPool.release(own);
+        }
+        sentBindingValues.putAll(sendingBindingValues);
+        sentRows.putAll(sendingRows);
+        sendingBindingValues.clear();
+        sendingRows.clear();
+        this.sentVersion = version;
+        if (childrenChanged) {
+            // Keep later rebuilds in line with the rows that were just sent.
+            UICommandProgram recompiled = UICommandProgram.compile(uiFile, elements, editCallbacks);
+            this.program = recompiled;
+            for (HyUIHud hud : subscribers.values()) {
+                hud.delegate.setProgram(recompiled);
+            }
+        }
+    }
+
+    private static Set<String> selectorsOf(UICommandRecorder recorder) {
+        Set<String> selectors = new HashSet<>();
+        for (int i = 0; i < recorder.size(); i++) {
+            if (recorder.kind(i) == RecordedCommand.Kind.SET) {
+                selectors.add(recorder.selector(i));
+            }
+        }
+        return selectors;
+    }
+
+    /**
+     * @return the program every subscriber is built from.
+     */
+    UICommandProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * Checks whether a change that would need a redraw leaves the elements and static properties of
+     * the HUD as they are, building only the changed elements, see {@link UICommandProgram#isStructureUnchanged(long)}.
+     *
+     * @return true if the structure did not change.
+     */
+    private boolean isStructureUnchanged() {
+        if (!program.isStructureUnchanged(sentVersion)) {
+            return false;
+        }
+        if (HyUIPlugin.getLog().isFineEnabled()) {
+            HyUIPlugin.getLog().logFine("BROADCAST: Skipping redraw of %s subscribers, the structure did not change", subscribers.size());
+        }
+        return true;
+    }
+
+    /**
+     * Sets how often the refresh listener is called, after which changes are flushed to every subscriber.
+     * If set to 0 (default), the HUD is not refreshed periodically.
+     *
+     * @param ms The refresh rate in milliseconds.
+     * @return This broadcast HUD for method chaining.
+     */
+    public synchronized HyUIBroadcastHud withRefreshRate(long ms) {
+        this.refreshRateMs = ms;
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+        if (ms > 0) {
+            // Run within the server wide UI budget, a refresh still waiting for it is not queued twice.
+            refreshTask = UIFrameScheduler.timer().scheduleAtFixedRate(
+                    () -> UIFrameScheduler.submit(UIFrameScheduler.Priority.NORMAL, this, this::refresh),
+                    ms, ms, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    public long getRefreshRateMs() {
+        return refreshRateMs;
+    }
+
+    /**
+     * Sets a listener called once per refresh, regardless of the number of subscribers.
+     *
+     * @param listener The refresh listener.
+     * @return This broadcast HUD for method chaining.
+     */
+    public HyUIBroadcastHud onRefresh(Consumer<HyUIBroadcastHud> listener) {
+        this.refreshListener = listener;
+        return this;
+    }
+
+    /**
+     * Stops refreshing and removes the HUD from every subscriber.
+     */
+    public synchronized void close() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+        for (PlayerRef playerRef : subscribers.keySet()) {
+            unsubscribe(playerRef);
+        }
+    }
+
+    private void refresh() {
+        try {
+            Consumer<HyUIBroadcastHud> listener = refreshListener;
+            if (listener != null) {
+                listener.accept(this);
+            }
+            flush();
+        } catch (RuntimeException e) {
+            // An exception would cancel the scheduled task for good.
+            HyUIPlugin.getLog().logWarning("Broadcast HUD %s refresh failed: %s", name, e);
+        }
+    }
+
+    private Optional<UIElementBuilder<?>> findByIdRecursive(UIElementBuilder<?> element, String id) {
+        if (id.equals(element.getId())) {
+            return Optional.of(element);
+        }
+        for (UIElementBuilder<?> child : element.children) {
+            Optional<UIElementBuilder<?>> found = findByIdRecursive(child, id);
+            if (found.isPresent()) return found;
+        }
+        return Optional.empty();
+    }
+}
@@ -7,7 +7,9 @@ import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
@@ -15,18 +17,49 @@ import java.util.function.Consumer;
  * It is important to store references to your existing HUDs to assist with updating elements.
  */
 public class HyUIHud extends CustomUIHud implements UIContext {
+    private static final AtomicInteger MOUNT_COUNTER = new AtomicInteger();
+
     protected final HyUInterface delegate;
+    private final String mountId;
 
     private boolean isHidden;
     private HyUIMultiHud parentMultiHud;
+    // The broadcast HUD this HUD shows to one of its subscribers, if any.
+    private volatile HyUIBroadcastHud broadcast;
     private long refreshRateMs;
     private Consumer<HyUIHud> refreshListener;
+    private UIFrameScheduler.Priority priority = UIFrameScheduler.Priority.NORMAL;
+    private HudRefreshDispatcher.Mode refreshMode = HudRefreshDispatcher.Mode.WORLD_THREAD;
     
     public HyUIHud(PlayerRef playerRef, String uiFile, 
                    List<UIElementBuilder<?>> elements, 
                    List<Consumer<UICommandBuilder>> editCallbacks) {
+        this(playerRef, uiFile, elements, editCallbacks, null, null);
+    }
+
+    public HyUIHud(PlayerRef playerRef, String uiFile,
+                   List<UIElementBuilder<?>> elements,
+                   List<Consumer<UICommandBuilder>> editCallbacks,
+                   UICommandProgram program,
+                   Map<String, Object> slotValues) {
+        this(playerRef, "HyUIHudMount" + MOUNT_COUNTER.incrementAndGet(), uiFile, elements, editCallbacks, program, slotValues);
+    }
+
+    /**
+     * @param mountId the ID of the group this HUD is built in when it belongs to a multi-hud, which
+     *                must be unique within the multi-hud.
+     */
+    HyUIHud(PlayerRef playerRef, String mountId, String uiFile,
+            List<UIElementBuilder<?>> elements,
+            List<Consumer<UICommandBuilder>> editCallbacks,
+            UICommandProgram program,
+            Map<String, Object> slotValues) {
         super(playerRef);
+        this.mountId = mountId;
         this.delegate = new HyUInterface(uiFile, elements, editCallbacks) {};
+        this.delegate.setProgram(program);
+        this.delegate.setSlotValues(slotValues);
+        UILifecycle.track(this);
     }
     
     @Override
@@ -34,6 +67,31 @@ public class HyUIHud extends CustomUIHud implements UIContext {
         delegate.buildFromCommandBuilder(uiCommandBuilder);
     }
 
+    /**
+     * Builds this HUD inside its own mount group of a multi-hud, so it can be replaced or removed
+     * without touching the other HUDs of the player.
+     *
+     * @param uiCommandBuilder    the command builder to write to.
+     * @param beforeMountSelector the mount group to insert this HUD's group before, or null to append it.
+     * @return the number of commands written.
+     */
+    int buildMounted(UICommandBuilder uiCommandBuilder, String beforeMountSelector) {
+        String mountGroup = "Group #" + mountId + " {}";
+        if (beforeMountSelector != null) {
+            uiCommandBuilder.insertBeforeInline(beforeMountSelector, mountGroup);
+        } else {
+            uiCommandBuilder.appendInline(HyUIMultiHud.ROOT_SELECTOR, mountGroup);
+        }
+        return 1 + delegate.buildFromCommandBuilder(uiCommandBuilder, getMountSelector());
+    }
+
+    /**
+     * @return the selector of the group this HUD is built in when it belongs to a multi-hud.
+     */
+    String getMountSelector() {
+        return "#" + mountId;
+    }
+
     /**
      * Retrieves an element builder by its ID.
      *
@@ -56,15 +114,145 @@ public class HyUIHud extends CustomUIHud implements UIContext {
         return delegate.getById(id, clazz);
     }
 
+    /**
+     * Overrides the text, value or visibility of an element for this HUD only.
+     * Use this instead of the element builders when the HUD was created from a frozen builder,
+     * see {@link InterfaceBuilder#freeze()}. Call {@link #flush()} to send the change.
+     *
+     * @param id       The ID of the element.
+     * @param property The property name, one of {@code Text}, {@code TitleText}, {@code Value} or {@code Visible}.
+     * @param value    The new value, or null to go back to the shared element's value.
+     */
+    public void setSlotValue(String id, String property, Object value) {
+        delegate.setSlotValue(id, property, value);
+    }
+
     /**
      * Updates the HUD with the provided builder.
      * The builder can be a completely new configuration.
      * 
+     * The new elements are compared with the current ones, and only the elements and properties that
+     * differ are sent. The HUD is only rebuilt in full if the root UI file or the interface edit
+     * callbacks changed. The builder is left untouched, so it can be frozen or used for other HUDs too.
+     * 
      * @param updatedHudBuilder The builder containing updated HUD configuration.
      */
     public void update(HudBuilder updatedHudBuilder) {
-        UICommandBuilder builder = configureFrom(updatedHudBuilder);
-        this.update(true, builder);
+        UICommandRecorder recorder = UICommandRecorderPool.acquire();
+        try {
+            int written = delegate.updateTree(updatedHudBuilder.uiFile, updatedHudBuilder.getTopLevelElements(),
+                    updatedHudBuilder.editCallbacks, updatedHudBuilder.program, recorder);
+            if (written < 0) {
+                redraw();
+                return;
+            }
+            if (written == 0) {
+                // Nothing to send, but the new tree is what the client has now.
+                delegate.markSent();
+                return;
+            }
+            HyUIMultiHud parent = parentMultiHud;
+            UICommandBuilder builder = new UICommandBuilder();
+            recorder.toProgram().replay(builder, null, delegate.getSlotValues(), parent != null ? getMountSelector() : null);
+            if (parent != null && !parent.tryAcquirePacket()) {
+                // Over the player's budget, the pending redraw will carry the new tree.
+                parent.requestRedraw(this);
+                return;
+            }
+            if (HyUIPlugin.getLog().isInfoEnabled()) {
+                HyUIPlugin.getLog().logInfo("UPDATE: Sending %s commands for the changed elements", written);
+            }
+            UIFrameScheduler.recordCommands(UIFrameScheduler.worldOf(getPlayerRef()), written);
+            this.update(false, builder);
+            delegate.markSent();
+        } finally {
+            UICommandRecorderPool.release(recorder);
+        }
+    }
+
+    /**
+     * Sends the properties that changed since the HUD was last built, without rebuilding it.
+     * 
+     * Text, values and visibility changed through the element builders (for example
+     * {@code LabelBuilder.withText}) are sent as single set commands. Any other change,
+     * such as adding children or changing styles, falls back to a full redraw.
+     */
+    public void flush() {
+        HyUIBroadcastHud shared = broadcast;
+        if (shared != null) {
+            // The changes belong to the broadcast, which sends them to every subscriber along with its own overrides.
+            shared.flush();
+            return;
+        }
+        HyUIMultiHud parent = parentMultiHud;
+        if (parent != null) {
+            // Sent through the multi-hud so it counts against the player's UI packet budget.
+            parent.requestFlush(List.of(this), true);
+            return;
+        }
+        if (!flushDirty()) {
+            redraw();
+        }
+    }
+
+    /**
+     * Queues this HUD to be flushed at the end of the player's world tick, on the world thread.
+     * 
+     * Any number of changes and flush requests made within the tick, from any system, are sent
+     * as one update, with the last write to each property winning. HUDs in the same multi-hud are
+     * merged into a single update.
+     */
+    public void requestFlush() {
+        HyUIBroadcastHud shared = broadcast;
+        if (shared != null) {
+            shared.requestFlush();
+            return;
+        }
+        UpdateCoalescer.submit(this);
+    }
+
+    HyUIMultiHud getParentMultiHud() {
+        return parentMultiHud;
+    }
+
+    /**
+     * @return the broadcast HUD this HUD shows to one of its subscribers, or null.
+     */
+    HyUIBroadcastHud getBroadcast() {
+        return broadcast;
+    }
+
+    /**
+     * Marks this HUD as the copy of a broadcast HUD shown to one subscriber, so its flushes go through the broadcast.
+     */
+    void setBroadcast(HyUIBroadcastHud broadcast) {
+        this.broadcast = broadcast;
+    }
+
+    /**
+     * Sends the changed properties of this HUD, if they can be sent on their own.
+     *
+     * @return false if a full redraw is required to apply the changes.
+     */
+    boolean flushDirty() {
+        UICommandRecorder recorder = UICommandRecorderPool.acquire();
+        try {
+            int written = delegate.buildDirty(recorder);
+            if (written < 0) {
+                return false;
+            }
+            if (written > 0) {
+                if (HyUIPlugin.getLog().isInfoEnabled()) {
+                    HyUIPlugin.getLog().logInfo("FLUSH: Sending %s changed properties from single hud", written);
+                }
+                UIFrameScheduler.recordCommands(UIFrameScheduler.worldOf(getPlayerRef()), written);
+                this.update(false, recorder.toCommandBuilder());
+            }
+            delegate.markSent();
+            return true;
+        } finally {
+            UICommandRecorderPool.release(recorder);
+        }
     }
 
     /**
@@ -89,31 +277,80 @@ public class HyUIHud extends CustomUIHud implements UIContext {
         this.parentMultiHud = parentMultiHud;
         if (this.parentMultiHud != null) {
             HyUIPlugin.getLog().logInfo("REDRAW: HUD shown from single hud");
-            // Redraw parent.
-            this.parentMultiHud.show();
+            // Only this HUD is built, inside its own mount group.
+            this.parentMultiHud.requestRedraw(this);
         }
     }
     
     /**
-     * Hides the UI from view of player.
+     * Hides the UI from view of player. Only the visibility of the root element is sent,
+     * and nothing is sent if the HUD is already hidden.
      */
     public void hide() {
-        setVisibilityOnFirstElement(false);
+        setHidden(true);
     }
 
     /**
      * Shows the UI to the player if it has previously been hidden.
      */
     public void unhide() {
-        setVisibilityOnFirstElement(true);
+        setHidden(false);
+    }
+
+    /**
+     * @return true if the HUD was hidden with {@link #hide()}.
+     */
+    public boolean isHidden() {
+        return isHidden;
     }
 
     public long getRefreshRateMs() {
         return refreshRateMs;
     }
 
+    /**
+     * Sets how often the refresh listener is called, restarting the interval if the HUD is already shown.
+     *
+     * @param refreshRateMs the refresh rate in milliseconds, or 0 to stop refreshing.
+     */
     public void setRefreshRateMs(long refreshRateMs) {
         this.refreshRateMs = refreshRateMs;
+        HyUIMultiHud parent = parentMultiHud;
+        if (parent != null) {
+            parent.scheduleRefresh(this);
+        }
+    }
+
+    /**
+     * @return the priority of this HUD's refreshes and flushes, see {@link UIFrameScheduler}.
+     */
+    public UIFrameScheduler.Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority of this HUD's refreshes and flushes when the server wide UI budget is spent.
+     *
+     * @param priority the priority, {@link UIFrameScheduler.Priority#NORMAL} by default.
+     */
+    public void setPriority(UIFrameScheduler.Priority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return where the refresh listener runs, see {@link HudRefreshDispatcher}.
+     */
+    public HudRefreshDispatcher.Mode getRefreshMode() {
+        return refreshMode;
+    }
+
+    /**
+     * Sets where the refresh listener runs.
+     *
+     * @param refreshMode the mode, {@link HudRefreshDispatcher.Mode#WORLD_THREAD} by default.
+     */
+    public void setRefreshMode(HudRefreshDispatcher.Mode refreshMode) {
+        this.refreshMode = refreshMode;
     }
 
     public void setRefreshListener(Consumer<HyUIHud> refreshListener) {
@@ -134,23 +371,46 @@ public class HyUIHud extends CustomUIHud implements UIContext {
         return delegate.getValue(id);
     }
 
-    private void setVisibilityOnFirstElement(boolean value) {
-        for (UIElementBuilder<?> element : delegate.getElements()) {
-            element.withVisible(value);
-            break;
+    private synchronized void setHidden(boolean hidden) {
+        List<UIElementBuilder<?>> elements = delegate.getElements();
+        if (isHidden == hidden || elements.isEmpty()) {
+            return;
+        }
+        isHidden = hidden;
+        UIElementBuilder<?> root = elements.get(0);
+        // Kept as an override for this HUD, so rebuilds keep it hidden and the element itself is untouched.
+        delegate.setSlotValue(root.getId(), "Visible", hidden ? Boolean.FALSE : null);
+
+        HyUIMultiHud parent = parentMultiHud;
+        if (parent != null && !parent.tryAcquirePacket()) {
+            // Over the player's budget, sent with the pending update instead.
+            parent.requestFlush(List.of(this), true);
+            return;
+        }
+        UICommandRecorder recorder = UICommandRecorderPool.acquire();
+        try {
+            recorder.mountInto(parent != null ? getMountSelector() : null);
+            // Nothing is recorded if the HUD was never built, the override applies once it is.
+            if (delegate.buildSlot(recorder, root, "Visible", Boolean.TRUE) > 0) {
+                HyUIPlugin.getLog().logInfo("FLUSH: HUD visibility set to %s", !hidden);
+                this.update(false, recorder.toCommandBuilder());
+            } else if (parent != null) {
+                parent.getPacketLimiter().release();
+            }
+        } finally {
+            UICommandRecorderPool.release(recorder);
+        }
+    }
+
+    void redraw() {
+        HyUIMultiHud parent = parentMultiHud;
+        if (parent != null) {
+            HyUIPlugin.getLog().logInfo("REDRAW: HUD changes require a redraw of the HUD");
+            parent.requestRedraw(this);
+        } else {
+            UICommandBuilder builder = new UICommandBuilder();
+            UIFrameScheduler.recordCommands(UIFrameScheduler.worldOf(getPlayerRef()), delegate.buildFromCommandBuilder(builder, null));
+            this.update(true, builder);
         }
-        UICommandBuilder builder = new UICommandBuilder();
-        delegate.buildFromCommandBuilder(builder);
-        HyUIPlugin.getLog().logInfo("REDRAW: HUD SET VISIBILITY from single hud");
-        this.update(true, builder);
-        isHidden = !isHidden;
-    }
-
-    private UICommandBuilder configureFrom(HudBuilder updatedHudBuilder) {
-        UICommandBuilder builder = new UICommandBuilder();
-        delegate.setEditCallbacks(updatedHudBuilder.editCallbacks);
-        delegate.setElements(updatedHudBuilder.getTopLevelElements());
-        delegate.setUiFile(updatedHudBuilder.uiFile);
-        return builder;
     }
 }
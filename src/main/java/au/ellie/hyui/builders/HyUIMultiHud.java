@@ -6,80 +6,532 @@ import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
 
 import javax.annotation.Nonnull;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A CustomUIHud that can aggregate multiple HyUIHud instances.
  * This allows multiple HUD elements to coexist in the single HUD slot provided by Hytale.
+ *
+ * Each HUD is built inside its own mount group, so adding, hiding or redrawing one HUD only
+ * sends the commands for that HUD.
  */
 public class HyUIMultiHud extends CustomUIHud {
-    private final Map<String, HyUIHud> huds = new LinkedHashMap<>();
-    private final Map<String, HyUIHud> removedHuds = new LinkedHashMap<>();
-    
-    private final Map<String, Long> lastRefreshTimes = new LinkedHashMap<>();
-    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private ScheduledFuture<?> refreshTask;
+    /**
+     * The UI file holding the mount groups of every HUD.
+     */
+    static final String ROOT_FILE = "Pages/EllieAU_HyUI_MultiHud.ui";
+
+    /**
+     * The selector of the group holding the mount groups of every HUD.
+     */
+    static final String ROOT_SELECTOR = "#HyUIMultiHud";
+
+    // Swapped as a whole on every change, so readers iterate a snapshot without taking a lock.
+    private final AtomicReference<HudRegistry> registry = new AtomicReference<>(HudRegistry.EMPTY);
+    // Guards the set of mount groups on screen. Only held to read or swap the set, never while HUDs are built.
+    private final Object mountLock = new Object();
+    private final Set<HyUIHud> mounted = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // Each HUD with a refresh rate has its own timer on the shared timer thread, which wakes up at the
+    // HUD's next deadline only, so HUDs without a refresh rate cost nothing.
+    private final Map<HyUIHud, ScheduledFuture<?>> refreshTasks = new ConcurrentHashMap<>();
+    private final Set<HyUIHud> dueRefreshes = ConcurrentHashMap.newKeySet();
+    private final Runnable refreshWork = this::runRefreshes;
+    private final Runnable attachWork = this::reattach;
+
+    private static final List<ExternalHudManager> externalManagers = new CopyOnWriteArrayList<>(List.of(new MultipleCustomUIHudManager()));
+    private volatile ExternalHudManager externalManager;
+    // Whether refreshes may redraw this multi-hud when their changes cannot be sent on their own.
+    private volatile boolean periodicShowEnabled = true;
+
+    /**
+     * The default number of UI packets sent to a single player per second.
+     */
+    public static final int DEFAULT_MAX_PACKETS_PER_SECOND = 20;
 
-    private int unauthorizedBuildAttempts = 0;
-    private int authorizedBuildAttempts = 0;
-    private boolean periodicShowEnabled = true;
+    private final UIPacketLimiter packetLimiter = new UIPacketLimiter(DEFAULT_MAX_PACKETS_PER_SECOND);
+    private final Object pendingLock = new Object();
+    private final Set<HyUIHud> pendingFlush = new LinkedHashSet<>();
+    private final Set<HyUIHud> pendingRedraw = new LinkedHashSet<>();
+    private final Set<HyUIHud> pendingUnmount = new LinkedHashSet<>();
+    private boolean pendingShow;
+    private volatile boolean built;
+    private boolean pendingRedrawAllowed;
+    // Set from the moment an update has to wait until it was sent, including while it is queued on the world.
+    private ScheduledFuture<?> pendingTask;
+    private final Runnable pendingWork = this::sendPending;
 
     public HyUIMultiHud(PlayerRef playerRef) {
         super(playerRef);
-        startRefreshTask();
+        UILifecycle.track(playerRef, this);
+    }
+
+    /**
+     * Stops every refresh timer, drops the pending updates and lets go of every HUD, once the player
+     * is gone, see {@link UILifecycle#releasePlayer(PlayerRef)}. Nothing is sent to the player.
+     */
+    void release() {
+        detach();
+        HudRegistry released = registry.getAndSet(HudRegistry.EMPTY);
+        for (HudRegistry.Entry entry : released.entries()) {
+            entry.hud().showWithMultiHud(null);
+        }
+    }
+
+    /**
+     * Stops every refresh timer and drops the pending updates while the player is between worlds, see
+     * {@link UILifecycle#detachPlayer(PlayerRef)}. The HUDs are kept, and nothing is sent to the player.
+     */
+    void detach() {
+        for (HyUIHud hud : refreshTasks.keySet()) {
+            cancelRefresh(hud);
+        }
+        dueRefreshes.clear();
+        synchronized (pendingLock) {
+            if (pendingTask != null) {
+                pendingTask.cancel(false);
+                pendingTask = null;
+            }
+            pendingShow = false;
+            pendingRedrawAllowed = false;
+            pendingFlush.clear();
+            pendingRedraw.clear();
+            pendingUnmount.clear();
+        }
+        synchronized (mountLock) {
+            mounted.clear();
+        }
+        built = false;
+        UpdateCoalescer.release(this);
+    }
+
+    /**
+     * Shows every HUD again once the player joined a world, see {@link UILifecycle#attachPlayer(PlayerRef, Executor)}.
+     * The client starts the new world without a HUD, so everything is sent again in full, from the new
+     * world's thread once the player is in it.
+     *
+     * @param world the world the player joined, or null to show the HUDs right away.
+     */
+    void attach(Executor world) {
+        if (registry.get().entries().isEmpty()) {
+            return;
+        }
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.INTERACTIVE, attachWork, attachWork);
+    }
+
+    private void reattach() {
+        HudRegistry current = registry.get();
+        if (current.entries().isEmpty()) {
+            // Released before the player got into the world.
+            return;
+        }
+        for (HyUIHud hud : current.shown()) {
+            scheduleRefresh(hud);
+        }
+        requestShow();
+    }
+
+    /**
+     * Starts, restarts or stops the refresh timer of a HUD to match its refresh rate.
+     * The first refresh is one full interval from now.
+     *
+     * @param hud the HUD, which is ignored unless it is shown in this multi-hud.
+     */
+    void scheduleRefresh(HyUIHud hud) {
+        refreshTasks.compute(hud, (h, task) -> {
+            if (task != null) {
+                task.cancel(false);
+            }
+            long rate = hud.getRefreshRateMs();
+            if (rate <= 0 || !registry.get().isShown(hud)) {
+                return null;
+            }
+            return UIFrameScheduler.timer().scheduleAtFixedRate(() -> onRefreshDue(hud), rate, rate, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private void cancelRefresh(HyUIHud hud) {
+        ScheduledFuture<?> task = refreshTasks.remove(hud);
+        if (task != null) {
+            task.cancel(false);
+        }
+        dueRefreshes.remove(hud);
+    }
+
+    private void onRefreshDue(HyUIHud hud) {
+        Executor world = UIFrameScheduler.worldOf(getPlayerRef());
+        if (world == null) {
+            // Player is between worlds, this refresh is skipped. Timers are stopped by detach() and
+            // everything is cleaned up by release() once the player is gone.
+            HyUIPlugin.getLog().logInfo("Player is not in a world, skipping refresh of multi-hud.");
+            return;
+        }
+        dueRefreshes.add(hud);
+        // Handed to the player's world right at the deadline. HUDs that fall due before the world runs
+        // its tasks are refreshed together, within the world's UI budget.
+        UIFrameScheduler.submit(world, hud.getPriority(), refreshWork, refreshWork);
+    }
+
+    private void runRefreshes() {
+        Map<HudRefreshDispatcher.Mode, List<HyUIHud>> due = new EnumMap<>(HudRefreshDispatcher.Mode.class);
+        for (HyUIHud hud : registry.get().shown()) {
+            if (dueRefreshes.remove(hud)) {
+                due.computeIfAbsent(hud.getRefreshMode(), m -> new ArrayList<>()).add(hud);
+            }
+        }
+
+        for (Map.Entry<HudRefreshDispatcher.Mode, List<HyUIHud>> entry : due.entrySet()) {
+            // Changed text, values and visibility of every refreshed HUD are sent as one update, flushed
+            // on the world thread whichever thread ran the listeners.
+            // Only redraw if we are the only ones really using this.
+            HudRefreshDispatcher.refresh(getPlayerRef(), entry.getKey(), entry.getValue(),
+                    refreshed -> UpdateCoalescer.submit(this, refreshed, periodicShowEnabled));
+        }
     }
 
-    private void startRefreshTask() {
-        if (refreshTask == null || refreshTask.isCancelled()) {
-            refreshTask = scheduler.scheduleAtFixedRate(this::checkRefreshes, 100, 100, TimeUnit.MILLISECONDS);
+    /**
+     * Redraws this multi-hud, as soon as the player's UI packet budget allows.
+     * Redraws requested while one is already waiting are merged into it.
+     */
+    public void requestShow() {
+        synchronized (pendingLock) {
+            if (pendingShow) {
+                packetLimiter.recordMerged(1);
+                return;
+            }
+            if (pendingTask != null || !packetLimiter.tryAcquire()) {
+                // A redraw includes every change still waiting to be sent.
+                packetLimiter.recordMerged(pendingFlush.size() + pendingRedraw.size() + pendingUnmount.size());
+                pendingFlush.clear();
+                pendingRedraw.clear();
+                pendingUnmount.clear();
+                pendingShow = true;
+                schedulePending();
+                return;
+            }
         }
+        HyUIPlugin.getLog().logInfo("REDRAW: Showing multi-hud");
+        this.show();
     }
 
-    private void checkRefreshes() {
-        PlayerRef playerRef = getPlayerRef();
-        if (playerRef.getReference() == null) {
-            // Player is no longer valid, cancel task and cleanup.
-            if (refreshTask != null) {
-                HyUIPlugin.getLog().logInfo("Player is invalid, cancelling refresh task for multi-hud.");
-                refreshTask.cancel(false);
+    /**
+     * Sends the changed properties of the given HUDs as one update, as soon as the player's UI packet
+     * budget allows. While an update is waiting, further changes are merged into it, and since only
+     * the dirty state is kept, the newest value of each property is the one that is sent.
+     *
+     * @param toFlush        the HUDs to flush, all of which must belong to this multi-hud.
+     * @param redrawIfNeeded whether to rebuild a HUD whose changes cannot be sent on their own.
+     */
+    void requestFlush(Collection<HyUIHud> toFlush, boolean redrawIfNeeded) {
+        List<HyUIHud> changed = new ArrayList<>(toFlush.size());
+        for (HyUIHud hud : toFlush) {
+            if (hud.delegate.hasPendingChanges()) {
+                changed.add(hud);
             }
+        }
+        if (changed.isEmpty()) {
             return;
         }
 
-        boolean needsRefresh = false;
-        long now = System.currentTimeMillis();
-        
-        synchronized (huds) {
-            for (Map.Entry<String, HyUIHud> entry : huds.entrySet()) {
-                String name = entry.getKey();
-                HyUIHud hud = entry.getValue();
-                long rate = hud.getRefreshRateMs();
-                
-                if (rate > 0) {
-                    long lastRefresh = lastRefreshTimes.getOrDefault(name, 0L);
-                    if (now - lastRefresh >= rate) {
-                        hud.triggerRefresh();
-                        needsRefresh = true;
-                        lastRefreshTimes.put(name, now);
+        synchronized (pendingLock) {
+            if (pendingShow) {
+                packetLimiter.recordMerged(changed.size());
+                return;
+            }
+            if (pendingTask != null || !packetLimiter.tryAcquire()) {
+                for (HyUIHud hud : changed) {
+                    if (!pendingFlush.add(hud)) {
+                        packetLimiter.recordMerged(1);
                     }
                 }
+                pendingRedrawAllowed |= redrawIfNeeded;
+                schedulePending();
+                return;
             }
         }
-        
-        if (needsRefresh) {
-            HyUIPlugin.getLog().logInfo("REFRESH.");
-            //this.build(new UICommandBuilder());
-            
-            // Only show if we are the only ones really using this.
-            if (periodicShowEnabled) {
-                this.show();
+        sendUpdate(changed, List.of(), List.of(), redrawIfNeeded);
+    }
+
+    /**
+     * Rebuilds a single HUD inside its mount group, as soon as the player's UI packet budget allows.
+     * The other HUDs of the player are left untouched.
+     *
+     * @param hud the HUD to rebuild, which must belong to this multi-hud.
+     */
+    void requestRedraw(HyUIHud hud) {
+        requestMountChange(hud, false);
+    }
+
+    /**
+     * Removes the mount group of a single HUD, as soon as the player's UI packet budget allows.
+     *
+     * @param hud the HUD to remove from the screen.
+     */
+    private void requestUnmount(HyUIHud hud) {
+        requestMountChange(hud, true);
+    }
+
+    private void requestMountChange(HyUIHud hud, boolean unmount) {
+        if (!built) {
+            // Nothing is on screen yet, so everything is sent with the first build.
+            requestShow();
+            return;
+        }
+        synchronized (pendingLock) {
+            if (pendingShow) {
+                packetLimiter.recordMerged(1);
+                return;
+            }
+            if (pendingTask != null || !packetLimiter.tryAcquire()) {
+                boolean added = unmount ? pendingUnmount.add(hud) : pendingRedraw.add(hud);
+                if (!added) {
+                    packetLimiter.recordMerged(1);
+                }
+                // Only the last request for a HUD counts.
+                (unmount ? pendingRedraw : pendingUnmount).remove(hud);
+                pendingFlush.remove(hud);
+                schedulePending();
+                return;
             }
         }
+        sendUpdate(List.of(), unmount ? List.of() : List.of(hud), unmount ? List.of(hud) : List.of(), true);
+    }
+
+    /**
+     * Takes a packet from the player's budget for an update sent by someone else, such as a broadcast HUD.
+     *
+     * @return false if the update must not be sent now, in which case a redraw should be requested instead.
+     */
+    boolean tryAcquirePacket() {
+        synchronized (pendingLock) {
+            return pendingTask == null && packetLimiter.tryAcquire();
+        }
+    }
+
+    /**
+     * @return the limiter for UI packets sent to this player, along with its counters.
+     */
+    public UIPacketLimiter getPacketLimiter() {
+        return packetLimiter;
+    }
+
+    /**
+     * Sets how many UI packets may be sent to this player per second.
+     *
+     * @param maxPacketsPerSecond the packet budget, also used as the burst size.
+     */
+    public void setMaxPacketsPerSecond(int maxPacketsPerSecond) {
+        packetLimiter.setMaxPacketsPerSecond(maxPacketsPerSecond);
+    }
+
+    private void schedulePending() {
+        if (pendingTask == null) {
+            long delay = Math.max(1, packetLimiter.millisUntilAvailable());
+            pendingTask = UIFrameScheduler.timer().schedule(this::onPendingDue, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Hands the pending update to the player's world once the packet budget allows, so it is built on
+     * the same thread as the listeners changing the elements.
+     */
+    private void onPendingDue() {
+        Executor world = UIFrameScheduler.worldOf(getPlayerRef());
+        if (world == null) {
+            // Drops the pending update.
+            sendPending();
+            return;
+        }
+        UIFrameScheduler.submitFlush(world, UIFrameScheduler.Priority.NORMAL, pendingWork, pendingWork);
+    }
+
+    private void sendPending() {
+        boolean show;
+        boolean redrawIfNeeded;
+        List<HyUIHud> toFlush;
+        List<HyUIHud> toRedraw;
+        List<HyUIHud> toUnmount;
+        synchronized (pendingLock) {
+            if (pendingTask == null) {
+                // Released while queued.
+                return;
+            }
+            pendingTask = null;
+            if (getPlayerRef().getReference() == null) {
+                packetLimiter.recordDropped((pendingShow ? 1 : 0) + pendingFlush.size() + pendingRedraw.size() + pendingUnmount.size());
+                pendingShow = false;
+                pendingFlush.clear();
+                pendingRedraw.clear();
+                pendingUnmount.clear();
+                return;
+            }
+            if (!packetLimiter.tryAcquire()) {
+                schedulePending();
+                return;
+            }
+            show = pendingShow;
+            redrawIfNeeded = pendingRedrawAllowed;
+            toFlush = new ArrayList<>(pendingFlush);
+            toRedraw = new ArrayList<>(pendingRedraw);
+            toUnmount = new ArrayList<>(pendingUnmount);
+            pendingShow = false;
+            pendingRedrawAllowed = false;
+            pendingFlush.clear();
+            pendingRedraw.clear();
+            pendingUnmount.clear();
+        }
+
+        if (show) {
+            HyUIPlugin.getLog().logInfo("REDRAW: Showing multi-hud after rate limit");
+            this.show();
+        } else {
+            sendUpdate(toFlush, toRedraw, toUnmount, redrawIfNeeded);
+        }
+    }
+
+    /**
+     * Sends the changed properties of the given HUDs, along with the HUDs to rebuild or remove, as a
+     * single update. Called with a packet already taken from the budget, which is given back if nothing changed.
+     *
+     * @param toFlush        the HUDs whose changed properties to send.
+     * @param toRedraw       the HUDs to rebuild inside their mount groups.
+     * @param toUnmount      the HUDs to remove from the screen.
+     * @param redrawIfNeeded whether to rebuild flushed HUDs whose changes cannot be sent on their own.
+     */
+    private void sendUpdate(Collection<HyUIHud> toFlush, Collection<HyUIHud> toRedraw,
+                            Collection<HyUIHud> toUnmount, boolean redrawIfNeeded) {
+        if (!built) {
+            // Nothing is on screen yet, so everything is sent with the first build.
+            packetLimiter.release();
+            requestShow();
+            return;
+        }
+        Set<HyUIHud> redraw = new LinkedHashSet<>(toRedraw);
+        List<HyUIHud> flushed = new ArrayList<>(toFlush.size());
+        UICommandRecorder recorder = UICommandRecorderPool.acquire();
+        try {
+            int written = 0;
+            for (HyUIHud hud : toFlush) {
+                if (redraw.contains(hud)) {
+                    continue;
+                }
+                // Every HUD is built inside its own mount group, and so are its changes.
+                recorder.mountInto(hud.getMountSelector());
+                HyUIBroadcastHud broadcast = hud.getBroadcast();
+                // The shared changes of a broadcast subscriber are sent by the broadcast, only its overrides are sent here.
+                int hudWritten = broadcast != null
+                        ? hud.delegate.buildOverrides(recorder, broadcast.getProgram(), Set.of())
+                        : hud.delegate.buildDirty(recorder);
+                if (hudWritten < 0) {
+                    if (redrawIfNeeded) {
+                        redraw.add(hud);
+                    }
+                    continue;
+                }
+                flushed.add(hud);
+                written += hudWritten;
+            }
+            recorder.mountInto(null);
+            if (written == 0 && redraw.isEmpty() && toUnmount.isEmpty()) {
+                // Bound properties that did not change cost no packet.
+                packetLimiter.release();
+                markSent(flushed);
+                return;
+            }
+
+            UICommandBuilder builder = recorder.toCommandBuilder();
+            int changedHuds = redraw.size() + toUnmount.size();
+            int mountCommands = writeMountChanges(builder, redraw, toUnmount);
+            if (written == 0 && mountCommands == 0) {
+                packetLimiter.release();
+                markSent(flushed);
+                return;
+            }
+            if (HyUIPlugin.getLog().isInfoEnabled()) {
+                HyUIPlugin.getLog().logInfo("FLUSH: Sending %s changed properties and %s rebuilt huds", written, changedHuds);
+            }
+            UIFrameScheduler.recordCommands(UIFrameScheduler.worldOf(getPlayerRef()), written + mountCommands);
+            this.update(false, builder);
+            markSent(flushed);
+        } finally {
+            UICommandRecorderPool.release(recorder);
+        }
+    }
+
+    private static void markSent(List<HyUIHud> flushed) {
+        for (HyUIHud hud : flushed) {
+            hud.delegate.markSent();
+        }
+    }
+
+    /**
+     * Removes the mount groups of the given HUDs, and rebuilds the given HUDs in their mount groups,
+     * keeping the order in which the HUDs were added.
+     *
+     * @return the number of commands written.
+     */
+    private int writeMountChanges(UICommandBuilder builder, Collection<HyUIHud> toRedraw, Collection<HyUIHud> toUnmount) {
+        List<HyUIHud> unmounted = new ArrayList<>(toUnmount.size());
+        List<MountChange> rebuilt = new ArrayList<>(toRedraw.size());
+        // Only the mount groups are worked out under the lock, the HUDs are built after it is released.
+        synchronized (mountLock) {
+            for (HyUIHud hud : toUnmount) {
+                if (mounted.remove(hud)) {
+                    unmounted.add(hud);
+                }
+            }
+            List<HyUIHud> order = registry.get().shown();
+            for (HyUIHud hud : toRedraw) {
+                int index = order.indexOf(hud);
+                if (index < 0) {
+                    // Removed or hidden since the redraw was requested.
+                    continue;
+                }
+                boolean wasMounted = mounted.remove(hud);
+                String before = null;
+                for (int i = index + 1; i < order.size() && before == null; i++) {
+                    if (mounted.contains(order.get(i))) {
+                        before = order.get(i).getMountSelector();
+                    }
+                }
+                rebuilt.add(new MountChange(hud, wasMounted, before));
+                mounted.add(hud);
+            }
+        }
+
+        int changed = 0;
+        for (HyUIHud hud : unmounted) {
+            builder.remove(hud.getMountSelector());
+            changed++;
+        }
+        for (MountChange change : rebuilt) {
+            if (change.wasMounted()) {
+                builder.remove(change.hud().getMountSelector());
+                changed++;
+            }
+            changed += change.hud().buildMounted(builder, change.before());
+        }
+        return changed;
+    }
+
+    /**
+     * A HUD to build in its mount group, inserted before the given mount group, or appended if it is null.
+     */
+    private record MountChange(HyUIHud hud, boolean wasMounted, String before) {
     }
 
     /**
@@ -87,11 +539,15 @@ public class HyUIMultiHud extends CustomUIHud {
      * @param hud The HyUIHud instance.
      */
     public void setHud(String name, HyUIHud hud) {
-        synchronized (huds) {
-            huds.put(name, hud);
-            lastRefreshTimes.put(name, System.currentTimeMillis());
+        // Tracked again in case this multi-hud was released, for example when set on a player that reconnected.
+        UILifecycle.track(getPlayerRef(), this);
+        HudRegistry before = registry.getAndUpdate(r -> r.put(name, hud));
+        HudRegistry.Entry replaced = before.get(name);
+        if (replaced != null && replaced.hud() != hud) {
+            syncHud(replaced.hud());
         }
         hud.showWithMultiHud(this);
+        scheduleRefresh(hud);
     }
 
     /**
@@ -99,16 +555,12 @@ public class HyUIMultiHud extends CustomUIHud {
      * @param name The name of the HUD to remove.
      */
     public void removeHud(String name) {
-        HyUIHud removed;
-        synchronized (huds) {
-            removed = huds.remove(name);
-            lastRefreshTimes.remove(name);
-        }
+        HudRegistry.Entry removed = registry.getAndUpdate(r -> r.remove(name)).get(name);
         if (removed != null) {
-            removed.showWithMultiHud(null);
-            HyUIPlugin.getLog().logInfo("REDRAW: HUD removed from multi-hud: " + name);
-            // Redraw self.
-            this.show();
+            removed.hud().showWithMultiHud(null);
+            HyUIPlugin.getLog().logInfo("REDRAW: HUD removed from multi-hud: %s", name);
+            // Hidden HUDs are not on screen, so nothing is sent for them.
+            syncHud(removed.hud());
         }
     }
     
@@ -117,137 +569,135 @@ public class HyUIMultiHud extends CustomUIHud {
      * @param instance The instance to remove.
      */
     public void removeHud(HyUIHud instance) {
-        String keyToRemove = null;
-        synchronized (huds) {
-            for (Map.Entry<String, HyUIHud> entry : huds.entrySet()) {
-                if (entry.getValue() == instance) {
-                    keyToRemove = entry.getKey();
-                    break;
-                }
-            }
-        }
-        if (keyToRemove != null) {
-            removeHud(keyToRemove);
-            return;
-        }
-
-        for (Map.Entry<String, HyUIHud> entry : removedHuds.entrySet()) {
-            if (entry.getValue() == instance) {
-                keyToRemove = entry.getKey();
-                break;
-            }
-        }
-        if (keyToRemove != null) {
-            removedHuds.remove(keyToRemove);
+        HudRegistry.Entry entry = registry.get().find(instance);
+        if (entry != null) {
+            removeHud(entry.name());
         }
-        HyUIPlugin.getLog().logInfo("REDRAW: HUD removed from multi-hud: " + keyToRemove);
-        // Redraw self.
-        this.show();
     }
 
     /**
-     * Hides a HUD from display by moving it to the removed list.
+     * Hides a HUD from display, keeping it in this multi-hud so it can be shown again.
      * @param name The name of the HUD to hide.
      */
     public void hideHud(String name) {
-        HyUIHud hud;
-        synchronized (huds) {
-            hud = huds.remove(name);
-            lastRefreshTimes.remove(name);
-        }
-        if (hud != null) {
-            removedHuds.put(name, hud);
-            HyUIPlugin.getLog().logInfo("REDRAW: HUD hidden from multi-hud: " + name);
-            // Redraw self.
-            this.show();
+        HudRegistry before = registry.getAndUpdate(r -> r.hide(name));
+        HudRegistry.Entry entry = before.get(name);
+        if (entry != null && !entry.hidden()) {
+            HyUIPlugin.getLog().logInfo("REDRAW: HUD hidden from multi-hud: %s", name);
+            syncHud(entry.hud());
         }
     }
 
     /**
-     * Hides a HUD from display by moving it to the removed list.
+     * Hides a HUD from display, keeping it in this multi-hud so it can be shown again.
      * @param instance The HUD instance to hide.
      */
     public void hideHud(HyUIHud instance) {
-        String keyToHide = null;
-        synchronized (huds) {
-            for (Map.Entry<String, HyUIHud> entry : huds.entrySet()) {
-                if (entry.getValue() == instance) {
-                    keyToHide = entry.getKey();
-                    break;
-                }
-            }
-        }
-        if (keyToHide != null) {
-            hideHud(keyToHide);
+        HudRegistry.Entry entry = registry.get().find(instance);
+        if (entry != null) {
+            hideHud(entry.name());
         }
     }
 
     /**
-     * Shows a HUD by moving it back to the main list.
+     * Shows a hidden HUD again, after every other shown HUD.
      * @param name The name of the HUD to show.
      */
     public void showHud(String name) {
-        HyUIHud hud = removedHuds.remove(name);
-        if (hud != null) {
-            synchronized (huds) {
-                huds.put(name, hud);
-                lastRefreshTimes.put(name, System.currentTimeMillis());
-            }
-            HyUIPlugin.getLog().logInfo("REDRAW: HUD shown from multi-hud: " + name);
-            // Redraw self.
-            this.show();
+        HudRegistry before = registry.getAndUpdate(r -> r.show(name));
+        HudRegistry.Entry entry = before.get(name);
+        if (entry != null && entry.hidden()) {
+            HyUIPlugin.getLog().logInfo("REDRAW: HUD shown from multi-hud: %s", name);
+            syncHud(entry.hud());
         }
     }
 
     /**
-     * Shows a HUD by moving it back to the main list.
+     * Shows a hidden HUD again, after every other shown HUD.
      * @param instance The HUD instance to show.
      */
     public void showHud(HyUIHud instance) {
-        String keyToShow = null;
-        for (Map.Entry<String, HyUIHud> entry : removedHuds.entrySet()) {
-            if (entry.getValue() == instance) {
-                keyToShow = entry.getKey();
-                break;
-            }
-        }
-        if (keyToShow != null) {
-            showHud(keyToShow);
+        HudRegistry.Entry entry = registry.get().find(instance);
+        if (entry != null) {
+            showHud(entry.name());
         }
     }
 
-    @Override
-    public void build(@Nonnull UICommandBuilder uiCommandBuilder) {
-        if (periodicShowEnabled && authorizedBuildAttempts < 10) {
-            // Check who calls this.
-            // If it is being called by something else that is 
-            // not within the com.hypixel.* package or this class, track how many times it is called.
-            boolean allowed = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE)
-                    .walk(frames -> frames
-                            .skip(1)
-                            .findFirst()
-                            .map(StackWalker.StackFrame::getDeclaringClass)
-                            .map(clazz -> clazz.getName().startsWith("com.hypixel.") || clazz.equals(HyUIMultiHud.class))
-                            .orElse(false));
-
-            if (!allowed) {
-                unauthorizedBuildAttempts++;
-                if (unauthorizedBuildAttempts < 1) {
-                    HyUIPlugin.getLog().logInfo("BUILD IGNORED: Build called from outside Hypixel package (Attempt " + unauthorizedBuildAttempts + ")");
-                    return;
-                } else {
-                    HyUIPlugin.getLog().logInfo("BUILD ALLOWED: Detected external HUD manager. Disabling periodic show.");
-                    periodicShowEnabled = false;
-                }
+    /**
+     * Brings the refresh timer and mount group of a HUD in line with the current registry.
+     * Run after every change to the registry, so when changes race, the request made last
+     * matches the registry they left behind.
+     */
+    private void syncHud(HyUIHud hud) {
+        synchronized (hud) {
+            if (registry.get().isShown(hud)) {
+                scheduleRefresh(hud);
+                requestRedraw(hud);
             } else {
-                authorizedBuildAttempts++;
+                cancelRefresh(hud);
+                requestUnmount(hud);
             }
         }
+    }
+
+    /**
+     * Registers another mod's HUD manager, so HyUI is hosted inside it instead of replacing it.
+     * Managers registered later are asked first.
+     *
+     * @param manager the manager to register.
+     */
+    public static void registerExternalManager(@Nonnull ExternalHudManager manager) {
+        externalManagers.add(0, manager);
+    }
 
-        synchronized (huds) {
-            for (HyUIHud hud : huds.values()) {
-                hud.build(uiCommandBuilder);
+    /**
+     * @param customHud the player's current custom HUD.
+     * @return the registered manager that manages the given HUD, or null.
+     */
+    static ExternalHudManager findExternalManager(@Nonnull CustomUIHud customHud) {
+        for (ExternalHudManager manager : externalManagers) {
+            if (manager.manages(customHud)) {
+                return manager;
             }
         }
+        return null;
+    }
+
+    /**
+     * Marks this multi-hud as hosted by another mod's HUD manager, see {@link ExternalHudManager#allowsRedraw()}.
+     *
+     * @param manager the hosting manager, or null if this multi-hud is the player's custom HUD itself.
+     */
+    public void setExternalManager(ExternalHudManager manager) {
+        if (manager != externalManager) {
+            HyUIPlugin.getLog().logInfo("Multi-hud hosted by %s, redraws allowed: %s",
+                    manager != null ? manager.getClass().getName() : "nobody",
+                    manager == null || manager.allowsRedraw());
+        }
+        this.externalManager = manager;
+        this.periodicShowEnabled = manager == null || manager.allowsRedraw();
+    }
+
+    /**
+     * @return the manager hosting this multi-hud, or null if it is the player's custom HUD itself.
+     */
+    public ExternalHudManager getExternalManager() {
+        return externalManager;
+    }
+
+    @Override
+    public void build(@Nonnull UICommandBuilder uiCommandBuilder) {
+        uiCommandBuilder.append(ROOT_FILE);
+        int written = 1;
+        List<HyUIHud> shown = registry.get().shown();
+        for (HyUIHud hud : shown) {
+            written += hud.buildMounted(uiCommandBuilder, null);
+        }
+        synchronized (mountLock) {
+            mounted.clear();
+            mounted.addAll(shown);
+        }
+        UIFrameScheduler.recordCommands(UIFrameScheduler.worldOf(getPlayerRef()), written);
+        built = true;
     }
 }
@@ -25,8 +25,24 @@ public class HyUIPage extends InteractiveCustomUIPage<DynamicPageData> implement
     private final HyUInterface delegate;
 
     public HyUIPage(PlayerRef playerRef, CustomPageLifetime lifetime, String uiFile, List<UIElementBuilder<?>> elements, List<Consumer<UICommandBuilder>> editCallbacks) {
+        this(playerRef, lifetime, uiFile, elements, editCallbacks, null, null);
+    }
+
+    public HyUIPage(PlayerRef playerRef, CustomPageLifetime lifetime, String uiFile, List<UIElementBuilder<?>> elements, List<Consumer<UICommandBuilder>> editCallbacks,
+                    UICommandProgram program, Map<String, Object> slotValues) {
         super(playerRef, lifetime, DynamicPageData.CODEC);
         this.delegate = new HyUInterface(uiFile, elements, editCallbacks) {};
+        this.delegate.setProgram(program);
+        this.delegate.setSlotValues(slotValues);
+        UILifecycle.track(playerRef, this);
+    }
+
+    HyUInterface getDelegate() {
+        return delegate;
+    }
+
+    void setParallelBuildThreshold(int parallelBuildThreshold) {
+        delegate.setParallelBuildThreshold(parallelBuildThreshold);
     }
 
     @Override
@@ -36,13 +52,47 @@ public class HyUIPage extends InteractiveCustomUIPage<DynamicPageData> implement
 
     @Override
     public void build(@Nonnull Ref<EntityStore> ref, @Nonnull UICommandBuilder uiCommandBuilder, @Nonnull UIEventBuilder uiEventBuilder, @Nonnull Store<EntityStore> store) {
-        delegate.build(ref, uiCommandBuilder, uiEventBuilder, store);
+        // Building runs on the world thread, so it is taken from the world's UI budget.
+        UIFrameScheduler.runCharged(store.getExternalData().getWorld(),
+                () -> delegate.build(ref, uiCommandBuilder, uiEventBuilder, store));
     }
 
 
     @Override
     public void handleDataEvent(@Nonnull Ref<EntityStore> ref, @Nonnull Store<EntityStore> store, @Nonnull DynamicPageData data) {
         super.handleDataEvent(ref, store, data);
-        delegate.handleDataEventInternal(data);
+        // Anything the listeners queue is for a page the player is looking at, so it runs first.
+        UIFrameScheduler.runInteractive(store.getExternalData().getWorld(), () -> delegate.handleDataEventInternal(data, this));
+    }
+
+    /**
+     * Sends the changes made to the elements of this page since it was last sent, as one partial update.
+     * Changes that cannot be sent on their own, such as a new anchor, rebuild the page instead.
+     * Call it from the world thread, for example from an event listener, which gets this page as its context.
+     */
+    public void flush() {
+        UICommandBuilder commands = new UICommandBuilder();
+        UIEventBuilder events = new UIEventBuilder();
+        int written = delegate.buildDirtyFromCommandBuilder(commands, events);
+        if (written < 0) {
+            HyUIPlugin.getLog().logInfo("REDRAW: Rebuilding page %s", delegate.getUiFile());
+            rebuild();
+        } else if (written > 0) {
+            sendUpdate(commands, events, false);
+        }
+    }
+
+    @Override
+    public void onDismiss(@Nonnull Ref<EntityStore> ref, @Nonnull Store<EntityStore> store) {
+        super.onDismiss(ref, store);
+        release();
+    }
+
+    /**
+     * Lets go of the elements, program and values of this page once it is closed or its player is gone.
+     */
+    void release() {
+        UILifecycle.untrack(playerRef, this);
+        delegate.release();
     }
 }
@@ -1,7 +1,12 @@
 package au.ellie.hyui.builders;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class HyUIStyle {
     public enum Alignment {
@@ -18,8 +23,28 @@ public class HyUIStyle {
     private final Map<String, HyUIStyle> states = new HashMap<>();
     private final Map<String, Object> rawProperties = new HashMap<>();
 
+    /**
+     * A single precomputed style property, ready to be appended to an element's style selector.
+     *
+     * @param suffix the property suffix including the leading dot, e.g. {@code .FontSize} or {@code .Disabled.TextColor}.
+     * @param value  the typed value to send.
+     */
+    public record StyleCommand(String suffix, Object value) {
+    }
+
+    private record Compiled(long stamp, StyleCommand[] commands) {
+    }
+
+    // Every change takes the next global version, so a style, or a state style replaced by another one,
+    // never goes back to a version a cached compilation was made at.
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private volatile long version = VERSIONS.incrementAndGet();
+    private final Map<Set<String>, Compiled> compiled = new ConcurrentHashMap<>();
+
     public HyUIStyle setFontSize(float fontSize) {
         this.fontSize = fontSize;
+        touch();
         return this;
     }
 
@@ -27,36 +52,43 @@ public class HyUIStyle {
         try {
             this.fontSize = Float.parseFloat(fontSize);
         } catch (NumberFormatException ignored) {}
+        touch();
         return this;
     }
 
     public HyUIStyle setRenderBold(boolean renderBold) {
         this.renderBold = renderBold;
+        touch();
         return this;
     }
 
     public HyUIStyle setRenderBold(String renderBold) {
         this.renderBold = Boolean.parseBoolean(renderBold);
+        touch();
         return this;
     }
 
     public HyUIStyle setRenderUppercase(boolean renderUppercase) {
         this.renderUppercase = renderUppercase;
+        touch();
         return this;
     }
 
     public HyUIStyle setRenderUppercase(String renderUppercase) {
         this.renderUppercase = Boolean.parseBoolean(renderUppercase);
+        touch();
         return this;
     }
 
     public HyUIStyle setTextColor(String textColor) {
         this.textColor = textColor;
+        touch();
         return this;
     }
 
     public HyUIStyle setHorizontalAlignment(Alignment horizontalAlignment) {
         this.horizontalAlignment = horizontalAlignment;
+        touch();
         return this;
     }
 
@@ -64,11 +96,13 @@ public class HyUIStyle {
         try {
             this.horizontalAlignment = Alignment.valueOf(horizontalAlignment);
         } catch (IllegalArgumentException ignored) {}
+        touch();
         return this;
     }
 
     public HyUIStyle setVerticalAlignment(Alignment verticalAlignment) {
         this.verticalAlignment = verticalAlignment;
+        touch();
         return this;
     }
 
@@ -76,11 +110,13 @@ public class HyUIStyle {
         try {
             this.verticalAlignment = Alignment.valueOf(verticalAlignment);
         } catch (IllegalArgumentException ignored) {}
+        touch();
         return this;
     }
 
     public HyUIStyle setAlignment(Alignment alignment) {
         this.alignment = alignment;
+        touch();
         return this;
     }
 
@@ -88,24 +124,100 @@ public class HyUIStyle {
         try {
             this.alignment = Alignment.valueOf(alignment);
         } catch (IllegalArgumentException ignored) {}
+        touch();
         return this;
     }
 
     public HyUIStyle setDisabledStyle(HyUIStyle style) {
         states.put("Disabled", style);
+        touch();
         return this;
     }
 
     public HyUIStyle set(String key, Object value) {
         this.rawProperties.put(key, value);
+        touch();
         return this;
     }
 
     public HyUIStyle set(Map<String, Object> properties) {
         this.rawProperties.putAll(properties);
+        touch();
         return this;
     }
 
+    /**
+     * Returns the flattened style commands for this style, skipping the given unsupported properties.
+     * The result is computed once per set of unsupported properties and reused until this style,
+     * or one of its state styles, is changed.
+     *
+     * @param unsupported the property names the target element does not support.
+     * @return the style commands, in the order they should be sent. Must not be modified.
+     */
+    public StyleCommand[] compile(Set<String> unsupported) {
+        long stamp = stamp();
+        Compiled cached = compiled.get(unsupported);
+        if (cached != null && cached.stamp() == stamp) {
+            return cached.commands();
+        }
+        List<StyleCommand> out = new ArrayList<>();
+        collect("", unsupported, out);
+        StyleCommand[] commands = out.toArray(new StyleCommand[0]);
+        compiled.put(unsupported, new Compiled(stamp, commands));
+        return commands;
+    }
+
+    /**
+     * @return the latest version of this style and its state styles.
+     */
+    private long stamp() {
+        long stamp = version;
+        for (HyUIStyle state : states.values()) {
+            stamp = Math.max(stamp, state.stamp());
+        }
+        return stamp;
+    }
+
+    private void touch() {
+        version = VERSIONS.incrementAndGet();
+    }
+
+    private void collect(String prefix, Set<String> unsupported, List<StyleCommand> out) {
+        if (fontSize != null && !unsupported.contains("FontSize")) {
+            out.add(new StyleCommand(prefix + ".FontSize", fontSize.doubleValue()));
+        }
+        if (renderBold != null && !unsupported.contains("RenderBold")) {
+            out.add(new StyleCommand(prefix + ".RenderBold", renderBold));
+        }
+        if (renderUppercase != null && !unsupported.contains("RenderUppercase")) {
+            out.add(new StyleCommand(prefix + ".RenderUppercase", renderUppercase));
+        }
+        if (textColor != null && !unsupported.contains("TextColor")) {
+            out.add(new StyleCommand(prefix + ".TextColor", textColor));
+        }
+        if (horizontalAlignment != null && !unsupported.contains("HorizontalAlignment")) {
+            out.add(new StyleCommand(prefix + ".HorizontalAlignment", horizontalAlignment.name()));
+        }
+        if (verticalAlignment != null && !unsupported.contains("VerticalAlignment")) {
+            out.add(new StyleCommand(prefix + ".VerticalAlignment", verticalAlignment.name()));
+        }
+        if (alignment != null && !unsupported.contains("Alignment")) {
+            out.add(new StyleCommand(prefix + ".Alignment", alignment.name()));
+        }
+
+        rawProperties.forEach((key, value) -> {
+            Object typed = value instanceof Float f ? f.doubleValue() : value;
+            if (!(typed instanceof String || typed instanceof Boolean || typed instanceof Double || typed instanceof Integer)) {
+                typed = String.valueOf(typed);
+            }
+            out.add(new StyleCommand(prefix + "." + key, typed));
+        });
+
+        states.forEach((state, nestedStyle) -> {
+            nestedStyle.collect(prefix + "." + state, unsupported, out);
+        });
+    }
+
     public Float getFontSize() {
         return fontSize;
     }
@@ -14,9 +14,13 @@ import au.ellie.hyui.events.DynamicPageData;
 
 import javax.annotation.Nonnull;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public abstract class HyUInterface implements UIContext {
@@ -25,6 +29,22 @@ public abstract class HyUInterface implements UIContext {
     protected List<UIElementBuilder<?>> elements;
     protected List<Consumer<UICommandBuilder>> editCallbacks;
     protected Map<String, Object> elementValues = new HashMap<>();
+    protected UICommandProgram program;
+    protected UICommandProgram lastProgram;
+    protected Map<String, Object> slotValues = new ConcurrentHashMap<>();
+    private final Map<String, Long> slotValueVersions = new ConcurrentHashMap<>();
+    private final Map<String, Object> sentBindingValues = new ConcurrentHashMap<>();
+    private final Map<String, Object> sendingBindingValues = new HashMap<>();
+    private final Map<UIElementBuilder<?>, KeyedChildren.Snapshot> sentRows = new IdentityHashMap<>();
+    private final Map<UIElementBuilder<?>, KeyedChildren.Snapshot> sendingRows = new IdentityHashMap<>();
+    // The ID the client knows an element by, keyed by the element's internal ID, for elements that
+    // replaced another one without a rebuild, see ElementTreeDiff. Kept here, as elements are shared.
+    private final Map<String, String> clientIds = new ConcurrentHashMap<>();
+    // The version of the element changes this interface's client has, see UIElementBuilder#currentVersion().
+    // Kept per interface, as the same elements can be shown by many interfaces.
+    private volatile long sentVersion;
+    private long sendingVersion;
+    private int parallelBuildThreshold;
 
     public HyUInterface(String uiFile, List<UIElementBuilder<?>> elements, List<Consumer<UICommandBuilder>> editCallbacks) {
         this.uiFile = uiFile;
@@ -38,67 +58,335 @@ public abstract class HyUInterface implements UIContext {
     }
 
     public void build(@Nonnull Ref<EntityStore> ref, @Nonnull UICommandBuilder uiCommandBuilder, @Nonnull UIEventBuilder uiEventBuilder, @Nonnull Store<EntityStore> store) {
-        HyUIPlugin.getLog().logInfo("Building HyUInterface" + (uiFile != null ? " from file: " + uiFile : ""));
-        if (uiFile != null) {
-            uiCommandBuilder.append(uiFile);
+        HyUIPlugin.getLog().logInfo("Building HyUInterface from file: %s", uiFile);
+        replayProgram(uiCommandBuilder, uiEventBuilder);
+    }
+
+    public void buildFromCommandBuilder(@Nonnull UICommandBuilder uiCommandBuilder) {
+        buildFromCommandBuilder(uiCommandBuilder, null);
+    }
+
+    /**
+     * Builds this interface inside a mount element, see {@link UICommandProgram#replay(UICommandBuilder, UIEventBuilder, Map, String)}.
+     *
+     * @param uiCommandBuilder the command builder to write to.
+     * @param mountSelector    the selector of the mount element, or null to build at the document root.
+     * @return the number of commands written.
+     */
+    int buildFromCommandBuilder(@Nonnull UICommandBuilder uiCommandBuilder, String mountSelector) {
+        HyUIPlugin.getLog().logInfo("Building HyUInterface from file: %s", uiFile);
+        return replayProgram(uiCommandBuilder, null, mountSelector);
+    }
+
+    /**
+     * Replays the compiled program if there is one and the elements did not change since it was compiled,
+     * otherwise compiles the current element tree first.
+     */
+    protected void replayProgram(UICommandBuilder uiCommandBuilder, UIEventBuilder uiEventBuilder) {
+        replayProgram(uiCommandBuilder, uiEventBuilder, null);
+    }
+
+    private synchronized int replayProgram(UICommandBuilder uiCommandBuilder, UIEventBuilder uiEventBuilder, String mountSelector) {
+        // Captured before reading anything, so a change made while building is sent again rather than missed.
+        long version = UIElementBuilder.currentVersion();
+        if (program != null && !program.isCurrent()) {
+            // An element of a compiled, unfrozen builder was changed afterwards, replaying would lose the change.
+            HyUIPlugin.getLog().logInfo("Dropping stale compiled program of %s", uiFile);
+            program = null;
         }
+        UICommandProgram toReplay = program != null
+                ? program
+                : UICommandProgram.compile(uiFile, elements, editCallbacks, parallelBuildThreshold);
 
-        if (editCallbacks != null) {
-            for (Consumer<UICommandBuilder> callback : editCallbacks) {
-                callback.accept(uiCommandBuilder);
+        elementValues.clear();
+        toReplay.captureInitialValues(elementValues, slotValues);
+        toReplay.captureBindingValues(slotValues, sentBindingValues);
+        toReplay.captureKeyedChildren(sentRows);
+        sendingBindingValues.clear();
+        sendingRows.clear();
+        toReplay.replay(uiCommandBuilder, uiEventBuilder, slotValues, mountSelector);
+        clientIds.clear();
+        lastProgram = toReplay;
+        sentVersion = version;
+        sendingVersion = version;
+        return toReplay.size();
+    }
+
+    /**
+     * Writes set commands for the properties that changed since this interface was last built,
+     * and marks them as sent.
+     *
+     * @param uiCommandBuilder the command builder to write to.
+     * @return the number of commands written, or -1 if the interface has to be rebuilt.
+     */
+    public int buildDirtyFromCommandBuilder(@Nonnull UICommandBuilder uiCommandBuilder) {
+        return buildDirtyFromCommandBuilder(uiCommandBuilder, null);
+    }
+
+    /**
+     * Writes set commands for the properties that changed since this interface was last built, along
+     * with the event bindings of rows that were added, and marks them as sent.
+     *
+     * @param uiCommandBuilder the command builder to write to.
+     * @param uiEventBuilder   the event builder to write to, or null for HUDs, which receive no events.
+     * @return the number of commands written, or -1 if the interface has to be rebuilt.
+     */
+    public int buildDirtyFromCommandBuilder(@Nonnull UICommandBuilder uiCommandBuilder, UIEventBuilder uiEventBuilder) {
+        UICommandRecorder recorder = UICommandRecorderPool.acquire();
+        try {
+            int written = buildDirty(recorder);
+            if (written >= 0) {
+                recorder.replay(uiCommandBuilder, uiEventBuilder);
+                markSent();
             }
+            return written;
+        } finally {
+            UICommandRecorderPool.release(recorder);
         }
+    }
 
-        elementValues.clear();
-        for (UIElementBuilder<?> element : elements) {
-            captureInitialValues(element);
-            element.build(uiCommandBuilder, uiEventBuilder);
+    /**
+     * Records set commands for the properties that changed since this interface was last sent.
+     * The changes are only marked as sent by {@link #markSent()}, once the commands were actually
+     * sent, so a packet that is dropped or deferred is recorded again on the next call.
+     *
+     * @param recorder the recorder to write to.
+     * @return the number of commands recorded, or -1 if the interface has to be rebuilt.
+     */
+    public synchronized int buildDirty(@Nonnull UICommandRecorder recorder) {
+        if (lastProgram == null) {
+            return -1;
         }
+        long version = UIElementBuilder.currentVersion();
+        long sent = sentVersion;
+        if (lastProgram.hasUnslottedChanges(sent) && !isStructureUnchanged()) {
+            return -1;
+        }
+        boolean childrenChanged = lastProgram.hasKeyedChildChanges(sent);
+        sendingBindingValues.clear();
+        sendingRows.clear();
+        int start = recorder.size();
+        int bound = lastProgram.replayChangedBindings(recorder, slotValues, sentBindingValues, sendingBindingValues);
+        int written = lastProgram.replayChangedSlots(recorder, slotValues, slotValueVersions, sent, sentRows, sendingRows);
+        if (written < 0) {
+            sendingBindingValues.clear();
+            sendingRows.clear();
+            return -1;
+        }
+        recorder.renameIds(start, clientIds);
+        if (childrenChanged) {
+            recompileAfterKeyedChanges();
+        }
+        sendingVersion = version;
+        return written + bound;
     }
 
-    public void buildFromCommandBuilder(@Nonnull UICommandBuilder uiCommandBuilder) {
-        HyUIPlugin.getLog().logInfo("Building HyUInterface " + (uiFile != null ? " from file: " + uiFile : ""));
-        if (uiFile != null) {
-            uiCommandBuilder.append(uiFile);
+    /**
+     * Records the per-player overrides that changed since this interface was last sent, or that the
+     * given shared commands overwrote, leaving the changes of the shared elements to whoever shares them,
+     * see {@link HyUIBroadcastHud}. The overrides are only marked as sent by {@link #markSent()}.
+     *
+     * @param recorder        the recorder to write to.
+     * @param shared          the program of the shared elements.
+     * @param sharedSelectors the selectors set by the shared commands sent along with these, may be empty.
+     * @return the number of commands recorded, or -1 if the interface has to be rebuilt.
+     */
+    synchronized int buildOverrides(@Nonnull UICommandRecorder recorder, UICommandProgram shared, Set<String> sharedSelectors) {
+        long version = UIElementBuilder.currentVersion();
+        sendingBindingValues.clear();
+        sendingRows.clear();
+        if (slotValues.isEmpty() && slotValueVersions.isEmpty()) {
+            // Most subscribers override nothing, so the commands are not even looked at.
+            sendingVersion = version;
+            return 0;
         }
+        int written = shared.replayChangedOverrides(recorder, slotValues, slotValueVersions, sentVersion, sharedSelectors);
+        if (written >= 0) {
+            sendingVersion = version;
+        }
+        return written;
+    }
 
-        if (editCallbacks != null) {
-            for (Consumer<UICommandBuilder> callback : editCallbacks) {
-                callback.accept(uiCommandBuilder);
-            }
+    /**
+     * Marks the changes recorded by the last {@link #buildDirty(UICommandRecorder)} or
+     * {@link #updateTree} as sent, called once their commands were handed to the client.
+     */
+    synchronized void markSent() {
+        markSent(sendingVersion, sendingRows);
+        sentBindingValues.putAll(sendingBindingValues);
+        sendingBindingValues.clear();
+        sendingRows.clear();
+    }
+
+    /**
+     * Marks every change up to the given version as sent, for commands recorded by someone else
+     * on behalf of this interface, such as a broadcast HUD.
+     *
+     * @param version the version captured before the commands were recorded.
+     * @param rows    the keyed children the commands brought the interface to, by owner.
+     */
+    synchronized void markSent(long version, Map<UIElementBuilder<?>, KeyedChildren.Snapshot> rows) {
+        if (version > sentVersion) {
+            sentVersion = version;
+        }
+        sentRows.putAll(rows);
+    }
+
+    /**
+     * Replaces the element tree of this interface, recording only the commands that turn the tree
+     * last sent into the new one, see {@link ElementTreeDiff}. The new elements are left as they are,
+     * the IDs the client knows them by are kept by this interface instead.
+     *
+     * @param newUiFile        the root UI file of the new tree.
+     * @param newElements      the top level elements of the new tree.
+     * @param newEditCallbacks the interface level edit callbacks of the new tree.
+     * @param newProgram       the compiled program of the new tree, only used if the interface has to be rebuilt.
+     * @param recorder         the recorder to write to.
+     * @return the number of commands recorded, or -1 if the interface has to be rebuilt because it was
+     *         never built, or its root UI file or edit callbacks changed. The commands are marked as sent
+     *         by {@link #markSent()}.
+     */
+    synchronized int updateTree(String newUiFile, List<UIElementBuilder<?>> newElements, List<Consumer<UICommandBuilder>> newEditCallbacks,
+                                UICommandProgram newProgram, @Nonnull UICommandRecorder recorder) {
+        if (lastProgram == null || !Objects.equals(uiFile, newUiFile)
+                || !ElementTreeDiff.sameCallbacks(editCallbacks, newEditCallbacks)) {
+            setEditCallbacks(newEditCallbacks);
+            setElements(newElements);
+            setUiFile(newUiFile);
+            setProgram(newProgram);
+            return -1;
         }
 
+        long version = UIElementBuilder.currentVersion();
+        int written = ElementTreeDiff.diff(elements, newElements, recorder, slotValues, sentVersion, clientIds);
+        this.elements = newElements;
+        this.editCallbacks = newEditCallbacks;
+        // Compiled for a full build of the new tree, compiled again from the tree when one is needed.
+        this.program = null;
+
+        UICommandProgram compiled = UICommandProgram.compile(uiFile, elements, editCallbacks, parallelBuildThreshold);
         elementValues.clear();
-        for (UIElementBuilder<?> element : elements) {
-            captureInitialValues(element);
-            element.build(uiCommandBuilder, null);
+        compiled.captureInitialValues(elementValues, slotValues);
+        compiled.captureBindingValues(slotValues, sentBindingValues);
+        compiled.captureKeyedChildren(sentRows);
+        sendingBindingValues.clear();
+        sendingRows.clear();
+        lastProgram = compiled;
+        sendingVersion = version;
+        return written;
+    }
+
+    /**
+     * Records a set command for a single dynamic slot of this interface, leaving every other change pending.
+     *
+     * @param recorder the recorder to write to.
+     * @param element  the element owning the slot.
+     * @param property the property name.
+     * @param fallback the value to send if the slot has no value.
+     * @return the number of commands recorded, or -1 if this interface was never built.
+     */
+    synchronized int buildSlot(@Nonnull UICommandRecorder recorder, UIElementBuilder<?> element, String property, Object fallback) {
+        if (lastProgram == null) {
+            return -1;
         }
+        int start = recorder.size();
+        int written = lastProgram.replaySlot(recorder, element, property, slotValues, fallback);
+        recorder.renameIds(start, clientIds);
+        return written;
     }
 
-    protected void captureInitialValues(UIElementBuilder<?> element) {
-        String id = element.getId();
-        if (id != null && element.initialValue != null) {
-            elementValues.put(id, element.initialValue);
+    /**
+     * @return true if anything changed since this interface was last built, or it was never built.
+     *         Interfaces with bound properties always report changes, as their suppliers have to be read.
+     */
+    public boolean hasPendingChanges() {
+        if (lastProgram == null || lastProgram.changedSince(sentVersion) || lastProgram.hasBindings()) {
+            return true;
         }
-        for (UIElementBuilder<?> child : element.children) {
-            captureInitialValues(child);
+        for (long version : slotValueVersions.values()) {
+            if (version > sentVersion) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a change that would otherwise need a rebuild, such as setting an anchor or style
+     * to the value it already had, leaves the commands sent to the client as they were. If so, only the
+     * dynamic slots are compared until the change is marked as sent. Only the changed elements are
+     * built again, see {@link UICommandProgram#isStructureUnchanged(long)}.
+     *
+     * @return true if a rebuild would send the same elements and static properties as the last one.
+     */
+    private boolean isStructureUnchanged() {
+        if (lastProgram.hasKeyedChildChanges(sentVersion) || !lastProgram.isStructureUnchanged(sentVersion)) {
+            return false;
+        }
+        HyUIPlugin.getLog().logFine("Skipping rebuild of %s, the structure did not change.", uiFile);
+        return true;
+    }
+
+    /**
+     * Recompiles the program after keyed rows were inserted or removed, so later updates and
+     * rebuilds match the rows the client has.
+     */
+    private void recompileAfterKeyedChanges() {
+        UICommandProgram recompiled = UICommandProgram.compile(uiFile, elements, editCallbacks, parallelBuildThreshold);
+        if (program != null) {
+            program = recompiled;
         }
+        lastProgram = recompiled;
+    }
+
+    /**
+     * Overrides a dynamic slot for this interface only, leaving the shared element untouched.
+     * The new value is sent on the next flush.
+     *
+     * @param elementId the user facing ID of the element.
+     * @param property  the property name, one of {@code Text}, {@code TitleText}, {@code Value} or {@code Visible}.
+     * @param value     the new value, or null to go back to the element's own value.
+     */
+    public void setSlotValue(String elementId, String property, Object value) {
+        String key = UICommandProgram.slotKey(elementId, property);
+        if (value != null) {
+            slotValues.put(key, value);
+        } else {
+            slotValues.remove(key);
+        }
+        slotValueVersions.put(key, UIElementBuilder.nextVersion());
     }
 
     protected void handleDataEventInternal(DynamicPageData data) {
-        HyUIPlugin.getLog().logInfo("Received DataEvent: Action=" + data.action);
-        data.values.forEach((key, value) -> {
-            HyUIPlugin.getLog().logInfo("  Property: " + key + " = " + value);
-        });
+        handleDataEventInternal(data, this);
+    }
 
-        for (UIElementBuilder<?> element : elements) {
-            handleElementEvents(element, data);
+    /**
+     * Calls the listeners of the elements the event targets.
+     *
+     * @param data    the event sent by the client.
+     * @param context the context handed to the listeners, the page itself for pages.
+     */
+    protected void handleDataEventInternal(DynamicPageData data, UIContext context) {
+        HyUIPlugin.getLog().logInfo("Received DataEvent: Action=%s", data.action);
+        if (HyUIPlugin.getLog().isInfoEnabled()) {
+            data.values.forEach((key, value) -> {
+                HyUIPlugin.getLog().logInfo("  Property: %s = %s", key, value);
+            });
+        }
+
+        for (UIElementBuilder<?> element : List.copyOf(elements)) {
+            handleElementEvents(element, data, context);
         }
     }
 
-    protected void handleElementEvents(UIElementBuilder<?> element, DynamicPageData data) {
+    protected void handleElementEvents(UIElementBuilder<?> element, DynamicPageData data, UIContext context) {
         String internalId = element.getEffectiveId();
         String userId = element.getId();
+        if (internalId != null) {
+            // Events target the element by the ID the client knows it by.
+            internalId = clientIds.getOrDefault(internalId, internalId);
+        }
 
         if (internalId != null) {
             String target = data.getValue("Target");
@@ -106,7 +394,7 @@ public abstract class HyUInterface implements UIContext {
             for (UIEventListener<?> listener : element.getListeners()) {
                 if (listener.type() == CustomUIEventBindingType.Activating && UIEventActions.BUTTON_CLICKED.equals(data.action)) {
                     if (internalId.equals(target)) {
-                        ((UIEventListener<Void>) listener).callback().accept(null, this);
+                        ((UIEventListener<Void>) listener).callback().accept(null, context);
                     }
                 } else if (listener.type() == CustomUIEventBindingType.ValueChanged) {
                     Object finalValue = null;
@@ -129,14 +417,15 @@ public abstract class HyUInterface implements UIContext {
                     }
 
                     if (finalValue != null) {
-                        ((UIEventListener<Object>) listener).callback().accept(finalValue, this);
+                        ((UIEventListener<Object>) listener).callback().accept(finalValue, context);
                     }
                 }
             }
         }
 
-        for (UIElementBuilder<?> child : element.children) {
-            handleElementEvents(child, data);
+        // Listeners may replace keyed rows, for example by paging a virtual list.
+        for (UIElementBuilder<?> child : List.copyOf(element.children)) {
+            handleElementEvents(child, data, context);
         }
     }
 
@@ -163,6 +452,13 @@ public abstract class HyUInterface implements UIContext {
         return getById(id).filter(clazz::isInstance).map(clazz::cast);
     }
 
+    /**
+     * @param parallelBuildThreshold the minimum number of sibling elements built in parallel, or 0 to build serially.
+     */
+    void setParallelBuildThreshold(int parallelBuildThreshold) {
+        this.parallelBuildThreshold = parallelBuildThreshold;
+    }
+
     public String getUiFile() {
         return uiFile;
     }
@@ -177,6 +473,7 @@ public abstract class HyUInterface implements UIContext {
 
     protected void setElements(List<UIElementBuilder<?>> elements) {
         this.elements = elements;
+        this.lastProgram = null;
     }
 
     public List<Consumer<UICommandBuilder>> getEditCallbacks() {
@@ -195,4 +492,48 @@ public abstract class HyUInterface implements UIContext {
         this.elementValues = elementValues;
     }
 
+    public UICommandProgram getProgram() {
+        return program;
+    }
+
+    protected void setProgram(UICommandProgram program) {
+        this.program = program;
+    }
+
+    public Map<String, Object> getSlotValues() {
+        return slotValues;
+    }
+
+    protected void setSlotValues(Map<String, Object> slotValues) {
+        this.slotValues = new ConcurrentHashMap<>();
+        if (slotValues != null) {
+            slotValues.forEach((key, value) -> {
+                if (value != null) {
+                    this.slotValues.put(key, value);
+                }
+            });
+        }
+        // Sent with the next build, like every other value.
+        slotValueVersions.clear();
+    }
+
+    /**
+     * Lets go of the element tree, program and values of this interface once it can no longer be shown,
+     * see {@link HyUIPage#onDismiss}. Building it afterwards shows an empty document.
+     */
+    synchronized void release() {
+        elements = List.of();
+        editCallbacks = List.of();
+        elementValues = new HashMap<>();
+        program = null;
+        lastProgram = null;
+        slotValues = new ConcurrentHashMap<>();
+        slotValueVersions.clear();
+        sentBindingValues.clear();
+        sendingBindingValues.clear();
+        sentRows.clear();
+        sendingRows.clear();
+        clientIds.clear();
+    }
+
 }
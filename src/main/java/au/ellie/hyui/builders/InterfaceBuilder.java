@@ -17,14 +17,51 @@ public abstract class InterfaceBuilder<T extends InterfaceBuilder<T>> {
     protected final Map<String, UIElementBuilder<?>> elementRegistry = new LinkedHashMap<>();
     protected final List<Consumer<UICommandBuilder>> editCallbacks = new ArrayList<>();
     protected String uiFile;
+    protected UICommandProgram program;
+    private ElementIdAllocator idAllocator = new ElementIdAllocator("");
+    private boolean frozen;
+    protected int parallelBuildThreshold;
 
     @SuppressWarnings("unchecked")
     protected T self() {
         return (T) this;
     }
 
+    /**
+     * Sets the scope used to generate the internal IDs of elements added afterwards.
+     * 
+     * Element IDs are numbered per builder in the order elements are added, so two builders with
+     * identical trees and the same scope produce identical selectors. HUDs that share a multi-hud
+     * are each built inside their own mount group, so they do not need different scopes.
+     *
+     * @param scope the scope, only letters and digits are kept.
+     * @return the builder instance for method chaining.
+     */
+    public T withIdScope(String scope) {
+        checkNotFrozen();
+        this.idAllocator = new ElementIdAllocator(scope);
+        return self();
+    }
+
+    /**
+     * Builds the children of any element with at least {@code minChildren} children in parallel,
+     * on the common fork/join pool. Intended for very large interfaces, such as shops with
+     * thousands of rows; the result is identical to building serially.
+     *
+     * @param minChildren the minimum number of sibling elements to build in parallel, or 0 to disable.
+     * @return the builder instance for method chaining.
+     */
+    public T withParallelBuild(int minChildren) {
+        checkNotFrozen();
+        this.parallelBuildThreshold = Math.max(0, minChildren);
+        this.program = null;
+        return self();
+    }
+
     public T fromFile(String uiFile) {
+        checkNotFrozen();
         this.uiFile = uiFile;
+        this.program = null;
         return self();
     }
 
@@ -34,12 +71,15 @@ public abstract class InterfaceBuilder<T extends InterfaceBuilder<T>> {
     }
 
     public T addElement(UIElementBuilder<?> element) {
+        checkNotFrozen();
         element.inside("#HyUIRoot");
         registerElement(element);
+        this.program = null;
         return self();
     }
 
     protected void registerElement(UIElementBuilder<?> element) {
+        element.allocateId(idAllocator);
         if (element.getId() != null) {
             this.elementRegistry.put(element.getId(), element);
         }
@@ -57,6 +97,7 @@ public abstract class InterfaceBuilder<T extends InterfaceBuilder<T>> {
     }
 
     public <V> T addEventListener(String id, CustomUIEventBindingType type, Class<V> valueClass, Consumer<V> callback) {
+        checkNotFrozen();
         UIElementBuilder<?> element = elementRegistry.get(id);
         if (element == null) {
             throw new IllegalArgumentException("No element found with ID '" + id + "'.");
@@ -70,6 +111,7 @@ public abstract class InterfaceBuilder<T extends InterfaceBuilder<T>> {
     }
 
     public <V> T addEventListener(String id, CustomUIEventBindingType type, Class<V> valueClass, BiConsumer<V, UIContext> callback) {
+        checkNotFrozen();
         UIElementBuilder<?> element = elementRegistry.get(id);
         if (element == null) {
             throw new IllegalArgumentException("No element found with ID '" + id + "'.");
@@ -83,10 +125,67 @@ public abstract class InterfaceBuilder<T extends InterfaceBuilder<T>> {
     }
 
     public T editElement(Consumer<UICommandBuilder> callback) {
+        checkNotFrozen();
         this.editCallbacks.add(callback);
+        this.program = null;
         return self();
     }
 
+    /**
+     * Compiles the current element tree into an immutable command program.
+     * 
+     * Every page or HUD created from this builder afterwards replays the program instead of
+     * walking the element tree, only patching the dynamic slots (text, values and visibility).
+     * Adding elements, edit callbacks or changing the UI file discards the compiled program, and changing
+     * an element afterwards makes pages and HUDs compile the tree again when they are built.
+     *
+     * @return the builder instance for method chaining.
+     */
+    public T compile() {
+        this.program = UICommandProgram.compile(uiFile, getTopLevelElements(), editCallbacks, parallelBuildThreshold);
+        return self();
+    }
+
+    /**
+     * Compiles this builder and freezes its element tree, so it can be shared between every page or HUD
+     * created from it. Each player then only holds the slot values it overrides, set when opening or
+     * later through {@code setSlotValue}, instead of its own copy of the tree.
+     * 
+     * Changing a frozen element or adding to a frozen builder throws an {@link IllegalStateException}.
+     *
+     * @return the builder instance for method chaining.
+     */
+    public T freeze() {
+        if (!frozen) {
+            compile();
+            for (UIElementBuilder<?> element : getTopLevelElements()) {
+                element.freeze();
+            }
+            frozen = true;
+        }
+        return self();
+    }
+
+    /**
+     * @return true if {@link #freeze()} has been called.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("This interface is frozen and can no longer be changed.");
+        }
+    }
+
+    /**
+     * @return the compiled program, or null if {@link #compile()} has not been called.
+     */
+    public UICommandProgram getProgram() {
+        return program;
+    }
+
     protected List<UIElementBuilder<?>> getTopLevelElements() {
         List<UIElementBuilder<?>> topLevel = new ArrayList<>();
         for (UIElementBuilder<?> element : elementRegistry.values()) {
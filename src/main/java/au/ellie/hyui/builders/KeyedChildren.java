@@ -0,0 +1,172 @@
+package au.ellie.hyui.builders;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The keyed rows of a group or container, see {@link GroupBuilder#withKeyedChildren(List, Function)}.
+ *
+ * The rows are kept as an immutable {@link Snapshot} that is replaced on every change. Interfaces
+ * keep the snapshot they last sent, so each of them can send a change as removals and insertions
+ * of the rows that changed instead of rebuilding the whole list.
+ */
+final class KeyedChildren {
+    /**
+     * The rows at one point in time, in order.
+     *
+     * @param keys the keys of the rows, in order.
+     * @param rows the rows by key.
+     */
+    record Snapshot(List<String> keys, Map<String, UIElementBuilder<?>> rows) {
+        static final Snapshot EMPTY = new Snapshot(List.of(), Map.of());
+
+        List<UIElementBuilder<?>> values() {
+            List<UIElementBuilder<?>> values = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                values.add(rows.get(key));
+            }
+            return values;
+        }
+    }
+
+    private final UIElementBuilder<?> owner;
+    private volatile Snapshot current = Snapshot.EMPTY;
+
+    KeyedChildren(UIElementBuilder<?> owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Replaces the rows with the given keys, in order. Rows whose key already exists are kept as is,
+     * the factory is only called for new keys.
+     *
+     * @return true if the keys or their order changed.
+     */
+    boolean update(List<String> keys, Function<String, ? extends UIElementBuilder<?>> rowFactory) {
+        Snapshot previous = current;
+        if (previous.keys().equals(keys)) {
+            return false;
+        }
+        if (new HashSet<>(keys).size() != keys.size()) {
+            throw new IllegalArgumentException("Child keys must be unique: " + keys);
+        }
+        Map<String, UIElementBuilder<?>> rows = new HashMap<>();
+        for (String key : keys) {
+            UIElementBuilder<?> row = previous.rows().get(key);
+            if (row == null) {
+                row = rowFactory.apply(key);
+            }
+            rows.put(key, row);
+        }
+        current = new Snapshot(List.copyOf(keys), Collections.unmodifiableMap(rows));
+        return true;
+    }
+
+    UIElementBuilder<?> get(String key) {
+        return current.rows().get(key);
+    }
+
+    /**
+     * @return the current rows, which never change once returned.
+     */
+    Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Records the commands that turn the rows last sent to an interface into the current rows.
+     *
+     * Removed rows are removed. Rows that keep their relative order stay untouched, the remaining
+     * rows are built again and inserted before the next untouched row, or appended. A key whose row
+     * was replaced by another element, for example by a new data source, counts as a removed row.
+     *
+     * @param recorder the recorder to write to.
+     * @param sent     the rows the interface last sent.
+     * @return the rows the recorded commands bring the interface to, to keep once they were sent.
+     */
+    Snapshot recordChanges(UICommandRecorder recorder, Snapshot sent) {
+        Snapshot target = current;
+        List<String> keys = target.keys();
+        Map<String, UIElementBuilder<?>> rows = target.rows();
+
+        for (String key : sent.keys()) {
+            if (!rows.containsKey(key)) {
+                recorder.remove(sent.rows().get(key).getRootSelector());
+            }
+        }
+
+        List<String> kept = new ArrayList<>(sent.keys().size());
+        for (String key : sent.keys()) {
+            if (rows.get(key) == sent.rows().get(key)) {
+                kept.add(key);
+            }
+        }
+        Set<String> stable = longestStableRun(kept, keys);
+        String[] anchors = new String[keys.size()];
+        String anchor = null;
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            anchors[i] = anchor;
+            if (stable.contains(keys.get(i))) {
+                anchor = rows.get(keys.get(i)).getRootSelector();
+            }
+        }
+
+        UICommandRecorder rowCommands = UICommandRecorderPool.acquire();
+        try {
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.get(i);
+                if (stable.contains(key)) {
+                    continue;
+                }
+                UIElementBuilder<?> row = rows.get(key);
+                UIElementBuilder<?> sentRow = sent.rows().get(key);
+                if (sentRow != null) {
+                    // There is no move command, so moved or replaced rows are built again.
+                    recorder.remove(sentRow.getRootSelector());
+                }
+                row.build(rowCommands, row.parentIn(owner));
+                recorder.appendAll(rowCommands, anchors[i]);
+                rowCommands.reset();
+            }
+        } finally {
+            UICommandRecorderPool.release(rowCommands);
+        }
+        return target;
+    }
+
+    /**
+     * Finds the largest set of rows that were sent before and are still in the same relative order,
+     * using the longest increasing subsequence of their previous positions.
+     */
+    private static Set<String> longestStableRun(List<String> sentKeys, List<String> keys) {
+        Map<String, Integer> previousIndex = new HashMap<>();
+        for (int i = 0; i < sentKeys.size(); i++) {
+            previousIndex.put(sentKeys.get(i), i);
+        }
+        List<String> retained = new ArrayList<>();
+        for (String key : keys) {
+            if (previousIndex.containsKey(key)) {
+                retained.add(key);
+            }
+        }
+        if (retained.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        int[] previousPositions = new int[retained.size()];
+        for (int i = 0; i < previousPositions.length; i++) {
+            previousPositions[i] = previousIndex.get(retained.get(i));
+        }
+        Set<String> stable = new HashSet<>();
+        for (int index : ElementTreeDiff.longestIncreasingSubsequence(previousPositions)) {
+            stable.add(retained.get(index));
+        }
+        return stable;
+    }
+}
@@ -0,0 +1,20 @@
+package au.ellie.hyui.builders;
+
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+
+import java.util.function.BiConsumer;
+
+/**
+ * An element edit callback registered with a key, see {@link UIElementBuilder#editElementAfter(Object, BiConsumer)}.
+ * Two callbacks with equal keys are expected to make the same edit, so an element updated with a new
+ * callback for the same key can be patched instead of built again, see {@link ElementTreeDiff}.
+ *
+ * @param key  identifies the edit, e.g. the CSS property and value it applies.
+ * @param edit the callback.
+ */
+record KeyedEdit(Object key, BiConsumer<UICommandBuilder, String> edit) implements BiConsumer<UICommandBuilder, String> {
+    @Override
+    public void accept(UICommandBuilder commandBuilder, String selector) {
+        edit.accept(commandBuilder, selector);
+    }
+}
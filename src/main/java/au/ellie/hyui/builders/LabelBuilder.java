@@ -3,8 +3,8 @@ package au.ellie.hyui.builders;
 import au.ellie.hyui.HyUIPlugin;
 import au.ellie.hyui.elements.UIElements;
 import au.ellie.hyui.theme.Theme;
-import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
-import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
+
+import java.util.function.Supplier;
 
 /**
  * Builder for creating label UI elements. 
@@ -46,7 +46,21 @@ public class LabelBuilder extends UIElementBuilder<LabelBuilder> {
      * @return The current instance of the {@code LabelBuilder} for method chaining.
      */
     public LabelBuilder withText(String text) {
+        checkNotFrozen();
         this.text = text;
+        markDirty("Text");
+        return this;
+    }
+
+    /**
+     * Binds the text of the label to a supplier, evaluated every time the HUD refreshes.
+     * Only changes from the last sent text are sent.
+     *
+     * @param text Supplies the text to display, or null to remove the binding.
+     * @return The current instance of the {@code LabelBuilder} for method chaining.
+     */
+    public LabelBuilder bindText(Supplier<String> text) {
+        bind("Text", text);
         return this;
     }
 
@@ -56,17 +70,17 @@ public class LabelBuilder extends UIElementBuilder<LabelBuilder> {
     }
 
     @Override
-    protected void onBuild(UICommandBuilder commands, UIEventBuilder events) {
+    protected void onBuild(UICommandRecorder commands) {
         String selector = getSelector();
         if (selector == null) return;
 
         if (text != null) {
-            HyUIPlugin.getLog().logInfo("Setting Text: " + text + " for " + selector);
-            commands.set(selector + ".Text", text);
+            HyUIPlugin.getLog().logFine("Setting Text: %s for %s", text, selector);
         }
+        commands.setSlot(selector + ".Text", this, "Text", () -> text);
 
         if (hyUIStyle == null && style != null) {
-            HyUIPlugin.getLog().logInfo("Setting Raw Style: " + style + " for " + selector);
+            HyUIPlugin.getLog().logFine("Setting Raw Style: %s for %s", style, selector);
             commands.set(selector + ".Style", style);
         }
     }
@@ -0,0 +1,46 @@
+package au.ellie.hyui.builders;
+
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+
+/**
+ * Hosts HyUI in the HUD of the MultipleHUD mod, registered by default.
+ */
+final class MultipleCustomUIHudManager implements ExternalHudManager {
+    private static final String HUD_KEY = "HyUIHUD";
+
+    @Override
+    public boolean manages(@Nonnull CustomUIHud customHud) {
+        return "MultipleCustomUIHud".equals(customHud.getClass().getSimpleName());
+    }
+
+    @Nonnull
+    @Override
+    public HyUIMultiHud getOrCreateMultiHud(@Nonnull CustomUIHud customHud, @Nonnull PlayerRef playerRef) {
+        // We support multiple hud mod by adding our own multi-hud to the existing one :3.
+        try {
+            Method getCustomHudsMethod = customHud.getClass().getDeclaredMethod("getCustomHuds");
+            getCustomHudsMethod.setAccessible(true);
+            @SuppressWarnings("unchecked")
+            HashMap<String, CustomUIHud> customHuds =
+                    (HashMap<String, CustomUIHud>) getCustomHudsMethod.invoke(customHud);
+
+            CustomUIHud existing = customHuds.get(HUD_KEY);
+            if (existing instanceof HyUIMultiHud multiHud) {
+                return multiHud;
+            }
+            HyUIMultiHud multiHud = new HyUIMultiHud(playerRef);
+            customHuds.put(HUD_KEY, multiHud);
+            return multiHud;
+        } catch (NoSuchMethodException | InvocationTargetException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -92,7 +92,9 @@ public class PageBuilder extends InterfaceBuilder<PageBuilder> {
         assert playerRef != null : "Player reference cannot be null. Use override for open(Store<ECS>) if reusing this builder.";
         Player playerComponent = store.getComponent(playerRef.getReference(), Player.getComponentType());
         PageManager pageManager = playerComponent.getPageManager();
-        pageManager.openCustomPage(playerRef.getReference(), store, new HyUIPage(playerRef, lifetime, uiFile, getTopLevelElements(), editCallbacks));
+        HyUIPage page = new HyUIPage(playerRef, lifetime, uiFile, getTopLevelElements(), editCallbacks, program, null);
+        page.setParallelBuildThreshold(parallelBuildThreshold);
+        pageManager.openCustomPage(playerRef.getReference(), store, page);
     }
 
     /**
@@ -105,8 +107,23 @@ public class PageBuilder extends InterfaceBuilder<PageBuilder> {
      * @param store The store containing the entity data required to configure and display the page.
      */
     public void open(@Nonnull PlayerRef playerRefParam, Store<EntityStore> store) {
+        open(playerRefParam, store, null);
+    }
+
+    /**
+     * Opens a custom UI page for the given player, patching the dynamic slots of the page
+     * with per-player values. This is intended to be used with {@code compile()}, so the same
+     * compiled page can be replayed for many players.
+     *
+     * @param playerRefParam The player reference for whom the page is being opened.
+     * @param store The store containing the entity data required to configure and display the page.
+     * @param slotValues Slot values keyed by {@code UICommandProgram.slotKey(elementId, property)}, may be null.
+     */
+    public void open(@Nonnull PlayerRef playerRefParam, Store<EntityStore> store, Map<String, Object> slotValues) {
         Player playerComponent = store.getComponent(playerRefParam.getReference(), Player.getComponentType());
         PageManager pageManager = playerComponent.getPageManager();
-        pageManager.openCustomPage(playerRefParam.getReference(), store, new HyUIPage(playerRefParam, lifetime, uiFile, getTopLevelElements(), editCallbacks));
+        HyUIPage page = new HyUIPage(playerRefParam, lifetime, uiFile, getTopLevelElements(), editCallbacks, program, slotValues);
+        page.setParallelBuildThreshold(parallelBuildThreshold);
+        pageManager.openCustomPage(playerRefParam.getReference(), store, page);
     }
 }
@@ -1,8 +1,6 @@
 package au.ellie.hyui.builders;
 
 import au.ellie.hyui.elements.UIElements;
-import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
-import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
 
 import java.util.Set;
 
@@ -32,7 +30,7 @@ public class PageOverlayBuilder extends UIElementBuilder<PageOverlayBuilder> {
     }
 
     @Override
-    protected void onBuild(UICommandBuilder commands, UIEventBuilder events) {
+    protected void onBuild(UICommandRecorder commands) {
         // No specific properties for PageOverlay itself yet, but it supports styling via base class.
     }
 }
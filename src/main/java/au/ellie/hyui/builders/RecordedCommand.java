@@ -0,0 +1,104 @@
+package au.ellie.hyui.builders;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUIEventBindingType;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.ui.builder.EventData;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+
+import java.util.Map;
+
+/**
+ * The vocabulary of recorded UI operations. The operations themselves are stored unboxed in the
+ * parallel arrays of a {@link UICommandRecorder}, so recording does not allocate per command.
+ */
+final class RecordedCommand {
+
+    /**
+     * The selector of the root group of the placeholder UI file, which top level elements are appended to.
+     */
+    static final String ROOT_SELECTOR = "#HyUIRoot";
+
+    enum Kind {
+        APPEND,
+        APPEND_INLINE,
+        INSERT_BEFORE,
+        INSERT_BEFORE_INLINE,
+        REMOVE,
+        SET,
+        SET_BOOLEAN,
+        SET_INT,
+        SET_DOUBLE,
+        SET_OBJECT,
+        EDIT,
+        EDIT_ELEMENT,
+        EVENT_BINDING
+    }
+
+    record EventBinding(CustomUIEventBindingType type, EventData data, boolean locksInterface) {
+    }
+
+    private RecordedCommand() {
+    }
+
+    /**
+     * Resolves a selector inside a mount element. Root appends go into the mount, and every other selector
+     * is looked up inside it, so interfaces sharing a document never see each other's elements.
+     */
+    static String mount(String selector, String mountSelector) {
+        if (selector == null) {
+            return mountSelector;
+        }
+        return mountSelector + " " + selector;
+    }
+
+    /**
+     * Replaces the element IDs in a selector or inline markup, matching whole IDs only.
+     *
+     * @param text    the selector or markup, may be null.
+     * @param renames the new ID of every element to rename, keyed by its current ID.
+     * @return the text with every {@code #id} in the map renamed, or the text itself if none is.
+     */
+    static String renameIds(String text, Map<String, String> renames) {
+        if (text == null || renames.isEmpty() || text.indexOf('#') < 0) {
+            return text;
+        }
+        StringBuilder renamed = null;
+        int copied = 0;
+        for (int i = text.indexOf('#'); i >= 0; i = text.indexOf('#', i + 1)) {
+            int end = i + 1;
+            while (end < text.length() && (Character.isLetterOrDigit(text.charAt(end)) || text.charAt(end) == '_')) {
+                end++;
+            }
+            String to = renames.get(text.substring(i + 1, end));
+            if (to != null) {
+                if (renamed == null) {
+                    renamed = new StringBuilder(text.length() + 8);
+                }
+                renamed.append(text, copied, i + 1).append(to);
+                copied = end;
+            }
+        }
+        return renamed == null ? text : renamed.append(text, copied, text.length()).toString();
+    }
+
+    /**
+     * Emits a set command using the overload matching the runtime type of the value.
+     */
+    static void applySet(UICommandBuilder commands, String selector, Object value) {
+        if (value instanceof String s) {
+            commands.set(selector, s);
+        } else if (value instanceof Boolean b) {
+            commands.set(selector, b.booleanValue());
+        } else if (value instanceof Integer i) {
+            commands.set(selector, i.intValue());
+        } else if (value instanceof Double d) {
+            commands.set(selector, d.doubleValue());
+        } else if (value instanceof Float f) {
+            commands.set(selector, f.doubleValue());
+        } else if (value instanceof Message m) {
+            commands.set(selector, m);
+        } else {
+            commands.set(selector, String.valueOf(value));
+        }
+    }
+}
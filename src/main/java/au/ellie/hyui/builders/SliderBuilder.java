@@ -7,11 +7,10 @@ import au.ellie.hyui.elements.UIElements;
 import au.ellie.hyui.theme.Theme;
 import com.hypixel.hytale.protocol.packets.interface_.CustomUIEventBindingType;
 import com.hypixel.hytale.server.core.ui.builder.EventData;
-import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
-import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
 
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Builder for creating slider UI elements.
@@ -53,22 +52,42 @@ public class SliderBuilder extends UIElementBuilder<SliderBuilder> {
     }
 
     public SliderBuilder withMin(int min) {
+        checkNotFrozen();
         this.min = min;
+        markDirty(STRUCTURE);
         return this;
     }
 
     public SliderBuilder withMax(int max) {
+        checkNotFrozen();
         this.max = max;
+        markDirty(STRUCTURE);
         return this;
     }
 
     public SliderBuilder withStep(int step) {
+        checkNotFrozen();
         this.step = step;
+        markDirty(STRUCTURE);
         return this;
     }
 
     public SliderBuilder withValue(int value) {
+        checkNotFrozen();
         this.value = value;
+        markDirty("Value");
+        return this;
+    }
+
+    /**
+     * Binds the value of the slider to a supplier, evaluated every time the HUD refreshes.
+     * Only changes from the last sent value are sent.
+     *
+     * @param value supplies the slider value, or null to remove the binding.
+     * @return this builder for method chaining.
+     */
+    public SliderBuilder bindValue(Supplier<Integer> value) {
+        bind("Value", value);
         return this;
     }
 
@@ -116,7 +135,7 @@ public class SliderBuilder extends UIElementBuilder<SliderBuilder> {
     }
     
     @Override
-    protected void onBuild(UICommandBuilder commands, UIEventBuilder events) {
+    protected void onBuild(UICommandRecorder commands) {
         String selector = getSelector();
         if (selector == null) return;
 
@@ -129,9 +148,7 @@ public class SliderBuilder extends UIElementBuilder<SliderBuilder> {
         if (step != null) {
             commands.set(selector + ".Step", step);
         }
-        if (value != null) {
-            commands.set(selector + ".Value", value);
-        }
+        commands.setSlot(selector + ".Value", this, "Value", () -> value);
 
         if (hyUIStyle == null && style != null) {
             commands.set(selector + ".Style", style);
@@ -140,8 +157,8 @@ public class SliderBuilder extends UIElementBuilder<SliderBuilder> {
         listeners.forEach(listener -> {
             if (listener.type() == CustomUIEventBindingType.ValueChanged) {
                 String eventId = getEffectiveId();
-                HyUIPlugin.getLog().logInfo("Adding ValueChanged event binding for " + selector + " with eventId: " + eventId);
-                events.addEventBinding(CustomUIEventBindingType.ValueChanged, selector,
+                HyUIPlugin.getLog().logFine("Adding ValueChanged event binding for %s with eventId: %s", selector, eventId);
+                commands.addEventBinding(CustomUIEventBindingType.ValueChanged, selector,
                         EventData.of("@ValueInt", selector + ".Value")
                             .append("Target", eventId)
                             .append("Action", UIEventActions.VALUE_CHANGED),
@@ -0,0 +1,613 @@
+package au.ellie.hyui.builders;
+
+import au.ellie.hyui.HyUIPlugin;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * An immutable, compiled form of an interface.
+ *
+ * A program is produced once by walking the element tree, and can then be replayed for any
+ * number of players without walking the tree again. Text, values and visibility are compiled
+ * as dynamic slots that are patched on every replay, see {@link #slotKey(String, String)}.
+ */
+public final class UICommandProgram {
+    // Never written to once the program is created.
+    private final UICommandRecorder commands;
+    private final UIElementBuilder<?>[] elements;
+    // The keyed children of every element with keyed children, as this program builds them.
+    private final Map<UIElementBuilder<?>, KeyedChildren.Snapshot> keyedChildren;
+    // The selector every element is appended to, and the hash of the commands it recorded.
+    private final Map<UIElementBuilder<?>, String> parents;
+    private final Map<UIElementBuilder<?>, Long> elementHashes;
+    // The properties every element has a command for, so changes are checked without scanning the commands.
+    private final Map<UIElementBuilder<?>, Set<String>> slottedProperties;
+    // The element version this program was compiled at, see UIElementBuilder#currentVersion().
+    private final long compiledVersion;
+
+    UICommandProgram(UICommandRecorder commands) {
+        this(commands, new UIElementBuilder<?>[0], Map.of(), Map.of(), UIElementBuilder.currentVersion());
+    }
+
+    private UICommandProgram(UICommandRecorder commands, UIElementBuilder<?>[] elements,
+                             Map<UIElementBuilder<?>, KeyedChildren.Snapshot> keyedChildren,
+                             Map<UIElementBuilder<?>, String> parents, long compiledVersion) {
+        this.compiledVersion = compiledVersion;
+        this.commands = commands;
+        this.elements = elements;
+        this.keyedChildren = keyedChildren;
+        this.parents = parents;
+        this.elementHashes = hashElements(commands, elements);
+        this.slottedProperties = indexProperties(commands);
+    }
+
+    /**
+     * Compiles an interface into a program.
+     *
+     * @param uiFile        the root UI file to append, may be null.
+     * @param elements      the top level elements of the interface.
+     * @param editCallbacks the interface level edit callbacks, may be null.
+     * @return the compiled program.
+     */
+    public static UICommandProgram compile(String uiFile,
+                                           List<UIElementBuilder<?>> elements,
+                                           List<Consumer<UICommandBuilder>> editCallbacks) {
+        return compile(uiFile, elements, editCallbacks, 0);
+    }
+
+    /**
+     * Compiles an interface into a program, optionally building large groups of children in parallel.
+     *
+     * @param uiFile            the root UI file to append, may be null.
+     * @param elements          the top level elements of the interface.
+     * @param editCallbacks     the interface level edit callbacks, may be null.
+     * @param parallelThreshold the minimum number of sibling elements built in parallel, or 0 to build serially.
+     * @return the compiled program.
+     * @see UICommandRecorder#buildAll(List)
+     */
+    public static UICommandProgram compile(String uiFile,
+                                           List<UIElementBuilder<?>> elements,
+                                           List<Consumer<UICommandBuilder>> editCallbacks,
+                                           int parallelThreshold) {
+        // Taken before reading anything, so a change made while compiling makes the program stale.
+        long version = UIElementBuilder.currentVersion();
+        UICommandRecorder recorder = new UICommandRecorder(parallelThreshold);
+        if (uiFile != null) {
+            recorder.append(uiFile);
+        }
+        if (editCallbacks != null) {
+            for (Consumer<UICommandBuilder> callback : editCallbacks) {
+                recorder.edit(callback);
+            }
+        }
+
+        List<UIElementBuilder<?>> allElements = new ArrayList<>();
+        for (UIElementBuilder<?> element : elements) {
+            collectElements(element, allElements);
+        }
+        // Taken before building, so rows changed while building are sent again rather than missed.
+        Map<UIElementBuilder<?>, KeyedChildren.Snapshot> keyedChildren = new IdentityHashMap<>();
+        for (UIElementBuilder<?> element : allElements) {
+            KeyedChildren.Snapshot rows = element.getKeyedChildren();
+            if (rows != null) {
+                keyedChildren.put(element, rows);
+            }
+        }
+        recorder.buildAll(elements);
+        // Resolved once every element has its ID.
+        Map<UIElementBuilder<?>, String> parents = new IdentityHashMap<>();
+        for (UIElementBuilder<?> element : elements) {
+            collectParents(element, null, parents);
+        }
+        UICommandProgram program = new UICommandProgram(recorder.copy(), allElements.toArray(new UIElementBuilder<?>[0]),
+                Collections.unmodifiableMap(keyedChildren), parents, version);
+        if (HyUIPlugin.getLog().isInfoEnabled()) {
+            HyUIPlugin.getLog().logInfo("Compiled interface program with %s commands.", program.size());
+        }
+        return program;
+    }
+
+    /**
+     * Builds the key used to override a dynamic slot on replay.
+     *
+     * @param elementId the user facing ID of the element (set via .withId).
+     * @param property  the property name, one of {@code Text}, {@code TitleText}, {@code Value} or {@code Visible}.
+     * @return the slot key, e.g. {@code MyLabel.Text}.
+     */
+    public static String slotKey(String elementId, String property) {
+        return elementId + "." + property;
+    }
+
+    /**
+     * Replays this program into the given builders.
+     *
+     * @param uiCommandBuilder the command builder to write to.
+     * @param uiEventBuilder   the event builder to write to, may be null for HUDs.
+     * @param slotValues       slot overrides keyed by {@link #slotKey(String, String)}, may be null.
+     */
+    public void replay(UICommandBuilder uiCommandBuilder, UIEventBuilder uiEventBuilder, Map<String, Object> slotValues) {
+        replay(uiCommandBuilder, uiEventBuilder, slotValues, null);
+    }
+
+    /**
+     * Replays this program inside a mount element instead of the document root. The root UI file is
+     * appended to the mount element, and selectors of its {@code #HyUIRoot} group are resolved inside it.
+     *
+     * @param uiCommandBuilder the command builder to write to.
+     * @param uiEventBuilder   the event builder to write to, may be null for HUDs.
+     * @param slotValues       slot overrides keyed by {@link #slotKey(String, String)}, may be null.
+     * @param mountSelector    the selector of the mount element, or null to replay at the document root.
+     */
+    public void replay(UICommandBuilder uiCommandBuilder, UIEventBuilder uiEventBuilder, Map<String, Object> slotValues, String mountSelector) {
+        for (int i = 0; i < commands.size(); i++) {
+            commands.apply(i, uiCommandBuilder, uiEventBuilder, slotValues, mountSelector);
+        }
+    }
+
+    /**
+     * Fills the given map with the initial values of every value holding element,
+     * preferring a {@code Value} slot override where one is given.
+     *
+     * @param elementValues the map to fill, keyed by element ID.
+     * @param slotValues    slot overrides, may be null.
+     */
+    public void captureInitialValues(Map<String, Object> elementValues, Map<String, Object> slotValues) {
+        for (UIElementBuilder<?> element : elements) {
+            if (element.getId() == null) {
+                continue;
+            }
+            String key = slotKey(element.getId(), "Value");
+            Object value = slotValues != null && slotValues.containsKey(key)
+                    ? slotValues.get(key)
+                    : element.initialValue;
+            if (value != null) {
+                elementValues.put(element.getId(), value);
+            }
+        }
+    }
+
+    /**
+     * Emits set commands for every dynamic slot whose property changed after the given version.
+     * Slots overridden by a per-player value are left untouched.
+     *
+     * @param uiCommandBuilder the command builder to write to.
+     * @param slotValues       slot overrides, may be null.
+     * @param sentVersion      the version of the changes the client already has, see {@link UIElementBuilder#currentVersion()}.
+     * @return the number of set commands emitted, or -1 if a change cannot be patched
+     *         and the interface has to be rebuilt.
+     */
+    public int replayDirtySlots(UICommandBuilder uiCommandBuilder, Map<String, Object> slotValues, long sentVersion) {
+        UICommandRecorder recorder = UICommandRecorderPool.acquire();
+        try {
+            int emitted = replayDirtySlots(recorder, slotValues, null, sentVersion);
+            if (emitted > 0) {
+                recorder.replay(uiCommandBuilder, null);
+            }
+            return emitted;
+        } finally {
+            UICommandRecorderPool.release(recorder);
+        }
+    }
+
+    /**
+     * Records set commands for every dynamic slot, or per-player override, that changed after the given version.
+     *
+     * The elements of a program may be shown by many interfaces, which each send the changes on their own
+     * schedule. Nothing is marked as sent here, the caller keeps the version it sent for the next call.
+     * Keyed children are compared with the rows this program was compiled with.
+     *
+     * @param recorder         the recorder to write to.
+     * @param slotValues       slot overrides, may be null.
+     * @param overrideVersions the version at which each override last changed, keyed by slot key, may be null.
+     * @param sentVersion      the version of the changes the client already has.
+     * @return the number of set commands recorded, or -1 if a change cannot be patched
+     *         and the interface has to be rebuilt.
+     */
+    public int replayDirtySlots(UICommandRecorder recorder, Map<String, Object> slotValues,
+                                Map<String, Long> overrideVersions, long sentVersion) {
+        if (hasUnslottedChanges(sentVersion)) {
+            return -1;
+        }
+        return replayChangedSlots(recorder, slotValues, overrideVersions, sentVersion, keyedChildren, new IdentityHashMap<>());
+    }
+
+    /**
+     * Same as {@link #replayDirtySlots(UICommandRecorder, Map, Map, long)}, for a caller that already
+     * made sure the changes that cannot be sent as set commands leave the interface as it is.
+     *
+     * @param sentRows    the keyed children the interface last sent, by owner.
+     * @param sendingRows filled with the keyed children the recorded commands bring the interface to.
+     */
+    int replayChangedSlots(UICommandRecorder recorder, Map<String, Object> slotValues,
+                           Map<String, Long> overrideVersions, long sentVersion,
+                           Map<UIElementBuilder<?>, KeyedChildren.Snapshot> sentRows,
+                           Map<UIElementBuilder<?>, KeyedChildren.Snapshot> sendingRows) {
+        int before = recorder.size();
+        int emitted = 0;
+        for (int i = 0; i < commands.size(); i++) {
+            if (!commands.isSlot(i)) {
+                continue;
+            }
+            String key = commands.slotKey(i);
+            Long overrideVersion = overrideVersions != null ? overrideVersions.get(key) : null;
+            boolean overrideChanged = overrideVersion != null && overrideVersion > sentVersion;
+            if (!overrideChanged) {
+                UIElementBuilder<?> owner = commands.owner(i);
+                if (!owner.changedSince(commands.property(i), sentVersion)
+                        || (slotValues != null && slotValues.containsKey(key))
+                        || owner.isBound(commands.property(i))) {
+                    // Unchanged, hidden behind an override, or compared by value with the bindings.
+                    continue;
+                }
+            }
+            Object value = commands.resolveValue(i, slotValues);
+            if (value == null) {
+                // A property can only be cleared by rebuilding the element.
+                recorder.truncate(before);
+                return -1;
+            }
+            recorder.setValue(commands.selector(i), value);
+            emitted++;
+        }
+
+        // Rows are inserted and removed last, so the sets above only target rows that still exist.
+        for (UIElementBuilder<?> element : elements) {
+            if (element.changedSince(UIElementBuilder.KEYED_CHILDREN, sentVersion)) {
+                int rowsBefore = recorder.size();
+                KeyedChildren.Snapshot sent = sentRows.getOrDefault(element, KeyedChildren.Snapshot.EMPTY);
+                sendingRows.put(element, element.recordKeyedChildChanges(recorder, sent));
+                emitted += recorder.size() - rowsBefore;
+            }
+        }
+        return emitted;
+    }
+
+    /**
+     * Records set commands for the per-player overrides of one interface showing shared elements, whose
+     * shared changes were recorded by someone else, such as a broadcast HUD. An override is sent when it
+     * changed after the given version, or when the shared commands overwrote it.
+     *
+     * @param recorder         the recorder to write to.
+     * @param slotValues       the overrides of the interface, may be null.
+     * @param overrideVersions the version at which each override last changed, keyed by slot key.
+     * @param sentVersion      the version of the overrides the client already has.
+     * @param sharedSelectors  the selectors set by the shared commands sent along with these.
+     * @return the number of set commands recorded, or -1 if a cleared override cannot be patched
+     *         and the interface has to be rebuilt.
+     */
+    int replayChangedOverrides(UICommandRecorder recorder, Map<String, Object> slotValues,
+                               Map<String, Long> overrideVersions, long sentVersion, Set<String> sharedSelectors) {
+        int before = recorder.size();
+        int emitted = 0;
+        for (int i = 0; i < commands.size(); i++) {
+            if (!commands.isSlot(i)) {
+                continue;
+            }
+            String key = commands.slotKey(i);
+            boolean overridden = slotValues != null && slotValues.containsKey(key);
+            Long overrideVersion = overrideVersions.get(key);
+            boolean overrideChanged = overrideVersion != null && overrideVersion > sentVersion;
+            boolean overwritten = overridden && sharedSelectors.contains(commands.selector(i));
+            if (!overrideChanged && !overwritten) {
+                continue;
+            }
+            if (!overridden && sharedSelectors.contains(commands.selector(i))) {
+                // A cleared override, which the shared commands already set to the element's value.
+                continue;
+            }
+            Object value = commands.resolveValue(i, slotValues);
+            if (value == null) {
+                recorder.truncate(before);
+                return -1;
+            }
+            recorder.setValue(commands.selector(i), value);
+            emitted++;
+        }
+        return emitted;
+    }
+
+    /**
+     * Records set commands for every bound slot whose supplier now returns a different value than
+     * the one last sent. Slots overridden by a per-player value are left to {@code replayDirtySlots}.
+     *
+     * @param recorder      the recorder to write to.
+     * @param slotValues    slot overrides, may be null.
+     * @param sentValues    the values last sent, keyed by selector.
+     * @param sendingValues filled with the values recorded, keyed by selector. Copied into the sent values
+     *                      once the commands were actually sent.
+     * @return the number of set commands recorded.
+     * @see UIElementBuilder#bind(String, java.util.function.Supplier)
+     */
+    public int replayChangedBindings(UICommandRecorder recorder, Map<String, Object> slotValues,
+                                     Map<String, Object> sentValues, Map<String, Object> sendingValues) {
+        int emitted = 0;
+        for (int i = 0; i < commands.size(); i++) {
+            if (!commands.isSlot(i) || !commands.owner(i).isBound(commands.property(i))) {
+                continue;
+            }
+            if (slotValues != null && slotValues.containsKey(commands.slotKey(i))) {
+                continue;
+            }
+            Object value = commands.resolveValue(i, null);
+            if (value == null || value.equals(sentValues.get(commands.selector(i)))) {
+                continue;
+            }
+            sendingValues.put(commands.selector(i), value);
+            recorder.setValue(commands.selector(i), value);
+            emitted++;
+        }
+        return emitted;
+    }
+
+    /**
+     * Records a set command for a single dynamic slot, regardless of whether it changed.
+     *
+     * @param recorder   the recorder to write to.
+     * @param owner      the element owning the slot.
+     * @param property   the property name of the slot.
+     * @param slotValues slot overrides, may be null.
+     * @param fallback   the value to send if the slot resolves to null.
+     * @return the number of set commands recorded, 0 if the element has no such slot.
+     */
+    int replaySlot(UICommandRecorder recorder, UIElementBuilder<?> owner, String property,
+                   Map<String, Object> slotValues, Object fallback) {
+        int emitted = 0;
+        for (int i = 0; i < commands.size(); i++) {
+            if (commands.isSlot(i) && commands.owner(i) == owner && property.equals(commands.property(i))) {
+                Object value = commands.resolveValue(i, slotValues);
+                recorder.setValue(commands.selector(i), value != null ? value : fallback);
+                emitted++;
+            }
+        }
+        return emitted;
+    }
+
+    /**
+     * Fills the given map with the current value of every bound slot, called after the program was sent in full.
+     *
+     * @param slotValues slot overrides, may be null.
+     * @param sentValues the map to fill, keyed by selector.
+     */
+    void captureBindingValues(Map<String, Object> slotValues, Map<String, Object> sentValues) {
+        sentValues.clear();
+        for (int i = 0; i < commands.size(); i++) {
+            if (commands.isSlot(i) && commands.owner(i).isBound(commands.property(i))
+                    && (slotValues == null || !slotValues.containsKey(commands.slotKey(i)))) {
+                Object value = commands.resolveValue(i, null);
+                if (value != null) {
+                    sentValues.put(commands.selector(i), value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the given map with the keyed children this program builds, called after the program was sent in full.
+     *
+     * @param sentRows the map to fill, keyed by owner.
+     */
+    void captureKeyedChildren(Map<UIElementBuilder<?>, KeyedChildren.Snapshot> sentRows) {
+        sentRows.clear();
+        sentRows.putAll(keyedChildren);
+    }
+
+    /**
+     * @return true if any dynamic slot of this program is bound to a supplier.
+     */
+    public boolean hasBindings() {
+        for (int i = 0; i < commands.size(); i++) {
+            if (commands.isSlot(i) && commands.owner(i).isBound(commands.property(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param sentVersion the version of the changes the client already has.
+     * @return true if any element of this program has a change after the given version that cannot
+     *         be sent as a set command or a keyed row change.
+     */
+    boolean hasUnslottedChanges(long sentVersion) {
+        for (UIElementBuilder<?> element : elements) {
+            if (hasUnslottedChange(element, sentVersion)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the changes that would otherwise need a rebuild, such as setting an anchor or style
+     * to the value it already had, leave the commands of this program as they are. Only the elements with
+     * such changes are built again, on their own, and compared with the commands they recorded here.
+     *
+     * @param sentVersion the version of the changes the client already has.
+     * @return true if a rebuild would send the same elements and static properties as this program.
+     */
+    boolean isStructureUnchanged(long sentVersion) {
+        for (UIElementBuilder<?> element : elements) {
+            if (!hasUnslottedChange(element, sentVersion)) {
+                continue;
+            }
+            Long sent = elementHashes.get(element);
+            if (sent == null || element.structureHash(parents.get(element)) != sent) {
+                return false;
+            }
+            for (UIElementBuilder<?> child : element.children) {
+                if (!elementHashes.containsKey(child)) {
+                    // Added after this program was compiled.
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes a rolling hash of the commands this program emits for a HUD, leaving out the values of
+     * dynamic slots, which are compared on their own. Two programs with the same hash append the same
+     * elements with the same static properties. Edit callbacks are compared by identity, as they are
+     * expected to edit the same way every time they are replayed.
+     *
+     * @return the hash of the static commands of this program.
+     */
+    long structureHash() {
+        long hash = 1;
+        for (int i = 0; i < commands.size(); i++) {
+            hash = hashCommand(hash, commands, i);
+        }
+        return hash;
+    }
+
+    /**
+     * Adds a single command to a rolling hash, see {@link #structureHash()}.
+     */
+    static long hashCommand(long hash, UICommandRecorder commands, int index) {
+        if (commands.kind(index) == RecordedCommand.Kind.EVENT_BINDING) {
+            // Never sent for HUDs.
+            return hash;
+        }
+        hash = 31 * hash + commands.kind(index).ordinal();
+        hash = 31 * hash + Objects.hashCode(commands.selector(index));
+        return 31 * hash + (commands.isSlot(index) ? commands.slotKey(index).hashCode() : commands.valueHash(index));
+    }
+
+    /**
+     * Adds the children of an element to a rolling hash, so adding, removing or reordering them changes the hash.
+     */
+    static long hashChildren(long hash, UIElementBuilder<?> element) {
+        for (UIElementBuilder<?> child : element.children) {
+            hash = 31 * hash + child.getRootSelector().hashCode();
+        }
+        return 31 * hash + element.children.size();
+    }
+
+    /**
+     * Hashes the commands recorded by each element, in the order they were recorded, see
+     * {@link UIElementBuilder#structureHash(String)}.
+     */
+    private static Map<UIElementBuilder<?>, Long> hashElements(UICommandRecorder commands, UIElementBuilder<?>[] elements) {
+        if (elements.length == 0) {
+            return Map.of();
+        }
+        Map<UIElementBuilder<?>, Long> hashes = new IdentityHashMap<>(elements.length * 2);
+        for (UIElementBuilder<?> element : elements) {
+            hashes.put(element, 1L);
+        }
+        for (int i = 0; i < commands.size(); i++) {
+            UIElementBuilder<?> source = commands.source(i);
+            Long hash = source != null ? hashes.get(source) : null;
+            if (hash != null) {
+                hashes.put(source, hashCommand(hash, commands, i));
+            }
+        }
+        for (UIElementBuilder<?> element : elements) {
+            hashes.put(element, hashChildren(hashes.get(element), element));
+        }
+        return hashes;
+    }
+
+    /**
+     * @param sentVersion the version of the changes the client already has.
+     * @return true if any element of this program changed after the given version.
+     */
+    public boolean changedSince(long sentVersion) {
+        for (UIElementBuilder<?> element : elements) {
+            if (element.changedSince(sentVersion)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if no element of this program changed since it was compiled, so replaying it still
+     *         builds the current tree. Always true for a frozen tree.
+     */
+    public boolean isCurrent() {
+        return !changedSince(compiledVersion);
+    }
+
+    /**
+     * @param sentVersion the version of the changes the client already has.
+     * @return true if keyed children changed after the given version. The program no longer
+     *         matches the element tree once those changes are sent.
+     */
+    public boolean hasKeyedChildChanges(long sentVersion) {
+        for (UIElementBuilder<?> element : elements) {
+            if (element.changedSince(UIElementBuilder.KEYED_CHILDREN, sentVersion)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of recorded commands in this program.
+     */
+    public int size() {
+        return commands.size();
+    }
+
+    private boolean hasUnslottedChange(UIElementBuilder<?> element, long sentVersion) {
+        if (!element.changedSince(sentVersion)) {
+            return false;
+        }
+        for (Map.Entry<String, Long> change : element.getChanges().entrySet()) {
+            if (change.getValue() > sentVersion && isUnslotted(element, change.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isUnslotted(UIElementBuilder<?> element, String property) {
+        if (UIElementBuilder.KEYED_CHILDREN.equals(property) && element.hasKeyedChildren()) {
+            return false;
+        }
+        return !hasSlot(element, property);
+    }
+
+    private boolean hasSlot(UIElementBuilder<?> element, String property) {
+        Set<String> properties = slottedProperties.get(element);
+        return properties != null && properties.contains(property);
+    }
+
+    private static Map<UIElementBuilder<?>, Set<String>> indexProperties(UICommandRecorder commands) {
+        Map<UIElementBuilder<?>, Set<String>> properties = new IdentityHashMap<>();
+        for (int i = 0; i < commands.size(); i++) {
+            UIElementBuilder<?> owner = commands.owner(i);
+            String property = commands.property(i);
+            if (owner != null && property != null) {
+                properties.computeIfAbsent(owner, key -> new HashSet<>()).add(property);
+            }
+        }
+        return properties;
+    }
+
+    private static void collectElements(UIElementBuilder<?> element, List<UIElementBuilder<?>> out) {
+        out.add(element);
+        for (UIElementBuilder<?> child : element.children) {
+            collectElements(child, out);
+        }
+    }
+
+    private static void collectParents(UIElementBuilder<?> element, UIElementBuilder<?> parent,
+                                       Map<UIElementBuilder<?>, String> parents) {
+        parents.put(element, element.parentIn(parent));
+        for (UIElementBuilder<?> child : element.children) {
+            collectParents(child, element, parents);
+        }
+    }
+}
@@ -0,0 +1,577 @@
+package au.ellie.hyui.builders;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUIEventBindingType;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.ui.builder.EventData;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Records the commands and event bindings produced while building HyUI elements.
+ *
+ * Element builders write into a recorder instead of a {@code UICommandBuilder} directly,
+ * which lets HyUI compile an element tree once into a {@link UICommandProgram} and replay
+ * it for many players.
+ *
+ * Commands are kept in parallel arrays indexed by command, which grow as needed and are kept
+ * on {@link #reset()}, so a pooled recorder records partial updates without allocating.
+ * Numbers and booleans are stored unboxed.
+ */
+public class UICommandRecorder {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private RecordedCommand.Kind[] kinds;
+    private String[] selectors;
+    private Object[] values;
+    private long[] numbers;
+    private UIElementBuilder<?>[] owners;
+    private String[] properties;
+    private String[] slotKeys;
+    private Supplier<?>[] slotSuppliers;
+    private String[] mounts;
+    private UIElementBuilder<?>[] sources;
+    private String mount;
+    private UIElementBuilder<?> source;
+    private int size;
+    private final int parallelThreshold;
+
+    public UICommandRecorder() {
+        this(0);
+    }
+
+    /**
+     * @param parallelThreshold the minimum number of children an element needs before they are built
+     *                          in parallel, or 0 to always build serially.
+     */
+    public UICommandRecorder(int parallelThreshold) {
+        this(parallelThreshold, INITIAL_CAPACITY);
+    }
+
+    private UICommandRecorder(int parallelThreshold, int capacity) {
+        this.parallelThreshold = parallelThreshold;
+        this.kinds = new RecordedCommand.Kind[capacity];
+        this.selectors = new String[capacity];
+        this.values = new Object[capacity];
+        this.numbers = new long[capacity];
+        this.owners = new UIElementBuilder<?>[capacity];
+        this.properties = new String[capacity];
+        this.slotKeys = new String[capacity];
+        this.slotSuppliers = new Supplier<?>[capacity];
+        this.mounts = new String[capacity];
+        this.sources = new UIElementBuilder<?>[capacity];
+    }
+
+    /**
+     * Records the following commands inside a mount element, e.g. the partial update of a HUD that is
+     * recorded together with the updates of the other HUDs of a multi-hud.
+     *
+     * @param mountSelector the selector of the mount element, or null to record at the document root.
+     * @return this recorder for method chaining.
+     * @see RecordedCommand#mount(String, String)
+     */
+    public UICommandRecorder mountInto(String mountSelector) {
+        this.mount = mountSelector;
+        return this;
+    }
+
+    public UICommandRecorder append(String documentPath) {
+        return record(RecordedCommand.Kind.APPEND, null, documentPath);
+    }
+
+    public UICommandRecorder append(String selector, String documentPath) {
+        return record(RecordedCommand.Kind.APPEND, selector, documentPath);
+    }
+
+    public UICommandRecorder appendInline(String selector, String document) {
+        return record(RecordedCommand.Kind.APPEND_INLINE, selector, document);
+    }
+
+    public UICommandRecorder insertBefore(String selector, String documentPath) {
+        return record(RecordedCommand.Kind.INSERT_BEFORE, selector, documentPath);
+    }
+
+    public UICommandRecorder insertBeforeInline(String selector, String document) {
+        return record(RecordedCommand.Kind.INSERT_BEFORE_INLINE, selector, document);
+    }
+
+    public UICommandRecorder remove(String selector) {
+        return record(RecordedCommand.Kind.REMOVE, selector, null);
+    }
+
+    public UICommandRecorder set(String selector, String value) {
+        return record(RecordedCommand.Kind.SET, selector, value);
+    }
+
+    public UICommandRecorder set(String selector, boolean value) {
+        return recordNumber(RecordedCommand.Kind.SET_BOOLEAN, selector, value ? 1 : 0);
+    }
+
+    public UICommandRecorder set(String selector, int value) {
+        return recordNumber(RecordedCommand.Kind.SET_INT, selector, value);
+    }
+
+    public UICommandRecorder set(String selector, double value) {
+        return recordNumber(RecordedCommand.Kind.SET_DOUBLE, selector, Double.doubleToRawLongBits(value));
+    }
+
+    public UICommandRecorder set(String selector, Message value) {
+        return record(RecordedCommand.Kind.SET, selector, value);
+    }
+
+    /**
+     * Records a set command for an already typed value, e.g. a precomputed {@link HyUIStyle.StyleCommand}.
+     * The matching {@code UICommandBuilder.set} overload is picked from the runtime type of the value.
+     */
+    public UICommandRecorder setValue(String selector, Object value) {
+        return record(RecordedCommand.Kind.SET, selector, value);
+    }
+
+    public UICommandRecorder setObject(String selector, Object value) {
+        return record(RecordedCommand.Kind.SET_OBJECT, selector, value);
+    }
+
+    /**
+     * Records a set command whose value is a dynamic slot. Slots are resolved every time the
+     * program is replayed, either from a per-player override or from the live value supplier.
+     * Nothing is emitted if the resolved value is null.
+     *
+     * @param selector the property selector, e.g. {@code #MyLabel.Text}.
+     * @param element  the element owning the property.
+     * @param property the property name, e.g. {@code Text}.
+     * @param value    supplies the current value of the property.
+     * @return this recorder for method chaining.
+     */
+    public UICommandRecorder setSlot(String selector, UIElementBuilder<?> element, String property, Supplier<?> value) {
+        int index = next(RecordedCommand.Kind.SET, selector);
+        owners[index] = element;
+        properties[index] = property;
+        slotKeys[index] = UICommandProgram.slotKey(element.getId(), property);
+        slotSuppliers[index] = element.boundValue(property, value);
+        return this;
+    }
+
+    /**
+     * Records a callback that edits the command builder directly. The callback is invoked
+     * again on every replay.
+     */
+    public UICommandRecorder edit(Consumer<UICommandBuilder> callback) {
+        return record(RecordedCommand.Kind.EDIT, null, callback);
+    }
+
+    /**
+     * Records an element edit callback, invoked with the element selector on every replay.
+     */
+    public UICommandRecorder edit(BiConsumer<UICommandBuilder, String> callback, String selector) {
+        return record(RecordedCommand.Kind.EDIT_ELEMENT, selector, callback);
+    }
+
+    public UICommandRecorder addEventBinding(CustomUIEventBindingType type, String selector, EventData data, boolean locksInterface) {
+        return record(RecordedCommand.Kind.EVENT_BINDING, selector,
+                new RecordedCommand.EventBinding(type, data, locksInterface));
+    }
+
+    /**
+     * Marks the following commands as recorded by the given element, until {@link #leave(UIElementBuilder)}.
+     * Lets a program tell which commands each element sent, see {@link UICommandProgram#isStructureUnchanged(long)}.
+     *
+     * @return the element that was recording before, to hand back to {@link #leave(UIElementBuilder)}.
+     */
+    UIElementBuilder<?> enter(UIElementBuilder<?> element) {
+        UIElementBuilder<?> enclosing = source;
+        source = element;
+        return enclosing;
+    }
+
+    /**
+     * Goes back to recording for the element returned by {@link #enter(UIElementBuilder)}.
+     */
+    void leave(UIElementBuilder<?> enclosing) {
+        source = enclosing;
+    }
+
+    /**
+     * Builds the given top level elements into this recorder, in order.
+     *
+     * @param elements the elements to build, each inside its own parent selector.
+     * @see #buildAll(List, UIElementBuilder)
+     */
+    public void buildAll(List<? extends UIElementBuilder<?>> elements) {
+        buildAll(elements, null);
+    }
+
+    /**
+     * Builds the given elements into this recorder, in order.
+     *
+     * If parallel building is enabled and there are enough elements, each element subtree is built
+     * on the common fork/join pool into its own recorder, and the recorders are then appended in order.
+     * The recorded commands are identical to building the elements one after another.
+     *
+     * @param elements the elements to build.
+     * @param parent   the element they are built inside, which resolves their parent selectors,
+     *                 or null for top level elements.
+     */
+    void buildAll(List<? extends UIElementBuilder<?>> elements, UIElementBuilder<?> parent) {
+        if (parallelThreshold <= 0 || elements.size() < parallelThreshold) {
+            for (UIElementBuilder<?> element : elements) {
+                element.build(this, element.parentIn(parent));
+            }
+            return;
+        }
+
+        List<SubtreeTask> tasks = new ArrayList<>(elements.size());
+        for (UIElementBuilder<?> element : elements) {
+            tasks.add(new SubtreeTask(element, element.parentIn(parent), new UICommandRecorder(parallelThreshold)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        for (SubtreeTask task : tasks) {
+            appendAll(task.recorder, null);
+        }
+    }
+
+    /**
+     * Appends everything recorded by another recorder, which built a single element.
+     *
+     * @param other          the recorder to copy from.
+     * @param beforeSelector if not null, the element is inserted before this element instead of
+     *                       being appended to its parent.
+     */
+    public void appendAll(UICommandRecorder other, String beforeSelector) {
+        for (int i = 0; i < other.size; i++) {
+            if (i == 0 && beforeSelector != null) {
+                if (other.kinds[i] == RecordedCommand.Kind.APPEND && other.selectors[i] != null) {
+                    insertBefore(beforeSelector, (String) other.values[i]);
+                    sources[size - 1] = other.sources[i];
+                    continue;
+                } else if (other.kinds[i] == RecordedCommand.Kind.APPEND_INLINE) {
+                    insertBeforeInline(beforeSelector, (String) other.values[i]);
+                    sources[size - 1] = other.sources[i];
+                    continue;
+                }
+            }
+            int index = next(other.kinds[i], other.selectors[i]);
+            values[index] = other.values[i];
+            numbers[index] = other.numbers[i];
+            owners[index] = other.owners[i];
+            properties[index] = other.properties[i];
+            slotKeys[index] = other.slotKeys[i];
+            slotSuppliers[index] = other.slotSuppliers[i];
+            if (other.mounts[i] != null) {
+                mounts[index] = other.mounts[i];
+            }
+            sources[index] = other.sources[i];
+        }
+    }
+
+    /**
+     * Replays everything recorded so far into the given builders.
+     *
+     * @param uiCommandBuilder the command builder to write to.
+     * @param uiEventBuilder   the event builder to write to, may be null for HUDs.
+     */
+    public void replay(UICommandBuilder uiCommandBuilder, UIEventBuilder uiEventBuilder) {
+        for (int i = 0; i < size; i++) {
+            apply(i, uiCommandBuilder, uiEventBuilder, null, null);
+        }
+    }
+
+    /**
+     * Creates the {@code UICommandBuilder} of a packet from everything recorded so far. The builder is
+     * the packet itself, so this is the only allocation of a partial update and should be called right
+     * before sending, once it is known that something is sent.
+     *
+     * @return a new command builder.
+     */
+    public UICommandBuilder toCommandBuilder() {
+        UICommandBuilder builder = new UICommandBuilder();
+        replay(builder, null);
+        return builder;
+    }
+
+    /**
+     * @return the number of recorded commands.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Discards everything recorded so far, keeping the backing arrays for reuse.
+     */
+    public void reset() {
+        // Drops the references too, so a pooled recorder does not keep elements or values alive.
+        truncate(0);
+        mount = null;
+        source = null;
+    }
+
+    /**
+     * Discards the commands recorded after the given number of commands, e.g. the partial update of
+     * an interface that turned out to need a rebuild.
+     *
+     * @param size the number of commands to keep.
+     */
+    void truncate(int size) {
+        if (size >= this.size) {
+            return;
+        }
+        Arrays.fill(selectors, size, this.size, null);
+        Arrays.fill(values, size, this.size, null);
+        Arrays.fill(owners, size, this.size, null);
+        Arrays.fill(properties, size, this.size, null);
+        Arrays.fill(slotKeys, size, this.size, null);
+        Arrays.fill(slotSuppliers, size, this.size, null);
+        Arrays.fill(mounts, size, this.size, null);
+        Arrays.fill(sources, size, this.size, null);
+        this.size = size;
+    }
+
+    /**
+     * Renames element IDs in the selectors and inline markup of the commands recorded from the given
+     * index on, for an interface whose client knows some elements by the IDs of the elements they
+     * replaced, see {@link ElementTreeDiff}.
+     *
+     * @param from    the index of the first command to rename.
+     * @param renames the ID on the client of every element whose ID differs, keyed by the element's ID.
+     */
+    void renameIds(int from, Map<String, String> renames) {
+        if (renames.isEmpty()) {
+            return;
+        }
+        for (int i = from; i < size; i++) {
+            selectors[i] = RecordedCommand.renameIds(selectors[i], renames);
+            if (kinds[i] == RecordedCommand.Kind.APPEND_INLINE || kinds[i] == RecordedCommand.Kind.INSERT_BEFORE_INLINE) {
+                values[i] = RecordedCommand.renameIds((String) values[i], renames);
+            }
+        }
+    }
+
+    /**
+     * @return the number of commands this recorder can hold before its arrays grow.
+     */
+    int capacity() {
+        return kinds.length;
+    }
+
+    /**
+     * @return an immutable program containing everything recorded so far.
+     */
+    public UICommandProgram toProgram() {
+        return new UICommandProgram(copy());
+    }
+
+    /**
+     * @return a recorder holding the same commands in arrays of exactly the right size.
+     */
+    UICommandRecorder copy() {
+        UICommandRecorder copy = new UICommandRecorder(parallelThreshold, size);
+        System.arraycopy(kinds, 0, copy.kinds, 0, size);
+        System.arraycopy(selectors, 0, copy.selectors, 0, size);
+        System.arraycopy(values, 0, copy.values, 0, size);
+        System.arraycopy(numbers, 0, copy.numbers, 0, size);
+        System.arraycopy(owners, 0, copy.owners, 0, size);
+        System.arraycopy(properties, 0, copy.properties, 0, size);
+        System.arraycopy(slotKeys, 0, copy.slotKeys, 0, size);
+        System.arraycopy(slotSuppliers, 0, copy.slotSuppliers, 0, size);
+        System.arraycopy(mounts, 0, copy.mounts, 0, size);
+        System.arraycopy(sources, 0, copy.sources, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    RecordedCommand.Kind kind(int index) {
+        return kinds[index];
+    }
+
+    String selector(int index) {
+        return selectors[index];
+    }
+
+    /**
+     * @return the payload of the command, with numbers and booleans boxed.
+     */
+    Object value(int index) {
+        return switch (kinds[index]) {
+            case SET_BOOLEAN -> numbers[index] != 0;
+            case SET_INT -> (int) numbers[index];
+            case SET_DOUBLE -> Double.longBitsToDouble(numbers[index]);
+            default -> values[index];
+        };
+    }
+
+    /**
+     * @return a hash of the payload of the command that does not box numbers.
+     */
+    int valueHash(int index) {
+        return switch (kinds[index]) {
+            case SET_BOOLEAN, SET_INT, SET_DOUBLE -> Long.hashCode(numbers[index]) * 31 + kinds[index].ordinal();
+            default -> values[index] != null ? values[index].hashCode() : 0;
+        };
+    }
+
+    /**
+     * @return the element that recorded the command, or null if it was not recorded by an element.
+     */
+    UIElementBuilder<?> source(int index) {
+        return sources[index];
+    }
+
+    /**
+     * @return true if the command's value is patched per replay.
+     */
+    boolean isSlot(int index) {
+        return slotKeys[index] != null;
+    }
+
+    /**
+     * @return the element owning the dynamic slot of the command, or null if its value is static.
+     */
+    UIElementBuilder<?> owner(int index) {
+        return owners[index];
+    }
+
+    /**
+     * @return the property name of the dynamic slot of the command, or null if its value is static.
+     */
+    String property(int index) {
+        return properties[index];
+    }
+
+    /**
+     * @return the dynamic slot key of the command, or null if its value is static.
+     */
+    String slotKey(int index) {
+        return slotKeys[index];
+    }
+
+    /**
+     * Resolves the value that should be sent for a command.
+     *
+     * @param slotValues per-replay slot overrides, may be null.
+     * @return the value to emit, or null if nothing should be emitted.
+     */
+    Object resolveValue(int index, Map<String, Object> slotValues) {
+        String slotKey = slotKeys[index];
+        if (slotKey == null) {
+            return value(index);
+        }
+        if (slotValues != null && slotValues.containsKey(slotKey)) {
+            return slotValues.get(slotKey);
+        }
+        return slotSuppliers[index] != null ? slotSuppliers[index].get() : values[index];
+    }
+
+    /**
+     * Applies a single command, optionally inside a mount element, see {@link RecordedCommand#mount(String, String)}.
+     *
+     * @param mountSelector the selector of the element the interface is mounted in, or null to apply the
+     *                      command to the document root, or the mount it was recorded into.
+     */
+    @SuppressWarnings("unchecked")
+    void apply(int index, UICommandBuilder commands, UIEventBuilder events, Map<String, Object> slotValues, String mountSelector) {
+        String selector = selectors[index];
+        String mountedIn = mountSelector != null ? mountSelector : mounts[index];
+        String target = mountedIn != null ? RecordedCommand.mount(selector, mountedIn) : selector;
+        Object value = values[index];
+        switch (kinds[index]) {
+            case APPEND -> {
+                if (target == null) {
+                    commands.append((String) value);
+                } else {
+                    commands.append(target, (String) value);
+                }
+            }
+            case APPEND_INLINE -> commands.appendInline(target, (String) value);
+            case INSERT_BEFORE -> commands.insertBefore(target, (String) value);
+            case INSERT_BEFORE_INLINE -> commands.insertBeforeInline(target, (String) value);
+            case REMOVE -> commands.remove(target);
+            case SET -> {
+                Object resolved = resolveValue(index, slotValues);
+                if (resolved != null) {
+                    RecordedCommand.applySet(commands, target, resolved);
+                }
+            }
+            case SET_BOOLEAN -> commands.set(target, numbers[index] != 0);
+            case SET_INT -> commands.set(target, (int) numbers[index]);
+            case SET_DOUBLE -> commands.set(target, Double.longBitsToDouble(numbers[index]));
+            case SET_OBJECT -> commands.setObject(target, value instanceof HyUIAnchor anchor ? anchor.toHytaleAnchor() : value);
+            case EDIT -> ((Consumer<UICommandBuilder>) value).accept(commands);
+            case EDIT_ELEMENT -> ((BiConsumer<UICommandBuilder, String>) value).accept(commands, target);
+            case EVENT_BINDING -> {
+                // HUDs are built without an event builder, they cannot receive events.
+                if (events != null) {
+                    RecordedCommand.EventBinding binding = (RecordedCommand.EventBinding) value;
+                    events.addEventBinding(binding.type(), target, binding.data(), binding.locksInterface());
+                }
+            }
+        }
+    }
+
+    private static final class SubtreeTask extends RecursiveAction {
+        private final UIElementBuilder<?> element;
+        private final String parent;
+        private final UICommandRecorder recorder;
+
+        private SubtreeTask(UIElementBuilder<?> element, String parent, UICommandRecorder recorder) {
+            this.element = element;
+            this.parent = parent;
+            this.recorder = recorder;
+        }
+
+        @Override
+        protected void compute() {
+            element.build(recorder, parent);
+        }
+    }
+
+    private UICommandRecorder record(RecordedCommand.Kind kind, String selector, Object value) {
+        int index = next(kind, selector);
+        values[index] = value;
+        return this;
+    }
+
+    private UICommandRecorder recordNumber(RecordedCommand.Kind kind, String selector, long value) {
+        int index = next(kind, selector);
+        numbers[index] = value;
+        return this;
+    }
+
+    /**
+     * Claims the next index, growing the arrays if they are full. Every field other than the kind
+     * and selector is cleared, either by {@link #reset()} or because the arrays are new.
+     */
+    private int next(RecordedCommand.Kind kind, String selector) {
+        if (size == kinds.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, kinds.length * 2);
+            kinds = Arrays.copyOf(kinds, capacity);
+            selectors = Arrays.copyOf(selectors, capacity);
+            values = Arrays.copyOf(values, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+            properties = Arrays.copyOf(properties, capacity);
+            slotKeys = Arrays.copyOf(slotKeys, capacity);
+            slotSuppliers = Arrays.copyOf(slotSuppliers, capacity);
+            mounts = Arrays.copyOf(mounts, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+        }
+        int index = size++;
+        kinds[index] = kind;
+        selectors[index] = selector;
+        mounts[index] = mount;
+        sources[index] = source;
+        return index;
+    }
+}
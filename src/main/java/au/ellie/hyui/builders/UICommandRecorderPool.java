@@ -0,0 +1,43 @@
+package au.ellie.hyui.builders;
+
+/**
+ * A small pool of {@link UICommandRecorder}s for partial updates.
+ *
+ * HUD refreshes run many times per second, reusing recorders keeps their backing arrays alive
+ * between refreshes, so a refresh that sends nothing does not allocate at all. The pool is a plain
+ * array used as a stack, so acquiring and releasing a recorder does not allocate either.
+ */
+final class UICommandRecorderPool {
+    private static final int MAX_POOLED = 64;
+    // Recorders that grew this large were used for a rebuild, let them be collected.
+    private static final int MAX_POOLED_SIZE = 1024;
+
+    private static final UICommandRecorder[] pool = new UICommandRecorder[MAX_POOLED];
+    private static int pooled;
+
+    private UICommandRecorderPool() {
+    }
+
+    static UICommandRecorder acquire() {
+        synchronized (pool) {
+            if (pooled > 0) {
+                UICommandRecorder recorder = pool[--pooled];
+                pool[pooled] = null;
+                return recorder;
+            }
+        }
+        return new UICommandRecorder();
+    }
+
+    static void release(UICommandRecorder recorder) {
+        if (recorder.capacity() > MAX_POOLED_SIZE) {
+            return;
+        }
+        recorder.reset();
+        synchronized (pool) {
+            if (pooled < MAX_POOLED) {
+                pool[pooled++] = recorder;
+            }
+        }
+    }
+}
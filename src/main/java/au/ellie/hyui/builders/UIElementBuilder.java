@@ -7,12 +7,21 @@ import au.ellie.hyui.events.UIEventListener;
 import com.hypixel.hytale.protocol.packets.interface_.CustomUIEventBindingType;
 import com.hypixel.hytale.server.core.Message;
 import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
-import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * A builder class for constructing UI elements with a hierarchical structure and configurable 
@@ -40,8 +49,34 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
     protected Integer flexWeight;
     protected final List<BiConsumer<UICommandBuilder, String>> editAfterCallbacks = new ArrayList<>();
     protected final List<BiConsumer<UICommandBuilder, String>> editBeforeCallbacks = new ArrayList<>();
+    // Versions are global, so every interface showing this element can compare them with the version it last sent.
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    private final Map<String, Long> changes = new ConcurrentHashMap<>();
+    private volatile long version;
+    // The hash of this element's own commands and the version and parent selector it was computed for.
+    private long structureHash;
+    private long structureHashVersion = -1;
+    private String structureHashParent;
+    private volatile boolean frozen;
 
-    private static int idCounter = 0;
+    /**
+     * Dirty property name for changes that cannot be patched with a single set command.
+     */
+    public static final String STRUCTURE = "Structure";
+
+    /**
+     * Dirty property name for changes to keyed children, sent as row insertions and removals.
+     */
+    public static final String KEYED_CHILDREN = "KeyedChildren";
+
+    private KeyedChildren keyedChildren;
+    private final Map<String, Supplier<?>> bindings = new ConcurrentHashMap<>();
+
+    private String idBase;
+    private ElementIdAllocator idAllocator;
+    private String idScope;
+    private int idIndex = -1;
+    private boolean provisionalId;
 
     public UIElementBuilder(String elementPath, String typeSelector) {
         this(Theme.RAW, elementPath, typeSelector);
@@ -51,27 +86,32 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
         this.theme = theme != null ? theme : Theme.RAW;
         this.elementPath = this.theme.format(elementPath);
         this.typeSelector = typeSelector;
-        this.id = generateUniqueId();
-        this.userId = this.id;
+        this.idBase = generateIdBase();
     }
 
-    protected abstract void onBuild(UICommandBuilder commands, UIEventBuilder events);
+    protected abstract void onBuild(UICommandRecorder commands);
 
     protected boolean supportsStyling() {
         return false;
     }
     
     public T withUiFile(String uiFilePath) {
+        checkNotFrozen();
         this.uiFilePath = uiFilePath;
+        markDirty(STRUCTURE);
         return (T) this;
     }
 
     public T addChild(UIElementBuilder<?> child) {
+        checkNotFrozen();
         this.children.add(child);
+        markDirty(STRUCTURE);
+        allocateIds(child);
         return (T) this;
     }
     
     public String getEffectiveId() {
+        ensureId();
         return id;
     }
 
@@ -80,6 +120,9 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
     }
 
     public String getId() {
+        if (userId == null) {
+            ensureId();
+        }
         return userId;
     }
 
@@ -108,8 +151,230 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
         return rawValue;
     }
 
+    /**
+     * Marks a property of this element as changed. Every interface showing this element compares the
+     * version of the change with the version it last sent, so each of them sends the change once.
+     * Properties that are compiled as dynamic slots (Text, TitleText, Value, Visible) can be
+     * sent on their own, anything else forces a full rebuild of the interface on the next flush.
+     *
+     * @param property the name of the changed property, or {@link #STRUCTURE} for anything that
+     *                 cannot be patched on its own.
+     */
+    protected void markDirty(String property) {
+        checkNotFrozen();
+        long next = VERSIONS.incrementAndGet();
+        changes.put(property, next);
+        version = next;
+    }
+
+    /**
+     * Throws if this element belongs to a frozen interface. Called first by every method that changes
+     * the element, so a frozen element is never left half changed.
+     */
+    protected void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Element '" + userId + "' belongs to a frozen interface shared between players. "
+                    + "Use setSlotValue on the HUD or page instead.");
+        }
+    }
+
+    /**
+     * @return the version of the latest change to any element. An interface that captures it before
+     *         building has sent every change up to and including it.
+     */
+    static long currentVersion() {
+        return VERSIONS.get();
+    }
+
+    /**
+     * @return a new version, for changes kept outside of elements such as slot overrides.
+     */
+    static long nextVersion() {
+        return VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Freezes this element and its children. Frozen elements can be shared between any number of
+     * pages and HUDs; changing them afterwards throws an {@link IllegalStateException}.
+     */
+    void freeze() {
+        frozen = true;
+        for (UIElementBuilder<?> child : children) {
+            child.freeze();
+        }
+    }
+
+    /**
+     * @return true if this element belongs to a frozen interface and can no longer be changed.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * @param sentVersion the version an interface last sent.
+     * @return true if any property of this element changed after the given version.
+     */
+    boolean changedSince(long sentVersion) {
+        return version > sentVersion;
+    }
+
+    /**
+     * @param property    the property name.
+     * @param sentVersion the version an interface last sent.
+     * @return true if the given property changed after the given version.
+     */
+    boolean changedSince(String property, long sentVersion) {
+        Long changed = changes.get(property);
+        return changed != null && changed > sentVersion;
+    }
+
+    /**
+     * @return the version of the latest change of every property that was ever changed, keyed by property name.
+     */
+    Map<String, Long> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Replaces the keyed children of this element. Keyed children are placed after any other children.
+     * Children whose key already exists are kept, so the factory is only called for new keys.
+     * When the HUD is flushed, only the rows that were added, removed or moved are sent.
+     *
+     * @param keys       the keys of the children, in order.
+     * @param rowFactory creates the child for a new key.
+     */
+    protected void updateKeyedChildren(List<String> keys, Function<String, ? extends UIElementBuilder<?>> rowFactory) {
+        checkNotFrozen();
+        if (keyedChildren == null) {
+            keyedChildren = new KeyedChildren(this);
+        }
+        Collection<UIElementBuilder<?>> previous = keyedChildren.snapshot().rows().values();
+        if (!keyedChildren.update(keys, rowFactory)) {
+            return;
+        }
+        markDirty(KEYED_CHILDREN);
+        Set<UIElementBuilder<?>> previousRows = Collections.newSetFromMap(new IdentityHashMap<>());
+        previousRows.addAll(previous);
+        children.removeIf(previousRows::contains);
+        for (UIElementBuilder<?> row : keyedChildren.snapshot().values()) {
+            children.add(row);
+            if (!previousRows.contains(row)) {
+                allocateIds(row);
+            }
+        }
+    }
+
+    protected Optional<UIElementBuilder<?>> getKeyedChild(String key) {
+        return keyedChildren != null ? Optional.ofNullable(keyedChildren.get(key)) : Optional.empty();
+    }
+
+    boolean hasKeyedChildren() {
+        return keyedChildren != null;
+    }
+
+    /**
+     * @return the current keyed children, or null if this element has none.
+     */
+    KeyedChildren.Snapshot getKeyedChildren() {
+        return keyedChildren != null ? keyedChildren.snapshot() : null;
+    }
+
+    /**
+     * Records the insertions and removals that bring the keyed children of an interface up to date.
+     *
+     * @param commands the recorder to write to.
+     * @param sent     the keyed children the interface last sent.
+     * @return the keyed children the interface has once the commands are sent.
+     */
+    KeyedChildren.Snapshot recordKeyedChildChanges(UICommandRecorder commands, KeyedChildren.Snapshot sent) {
+        return keyedChildren != null ? keyedChildren.recordChanges(commands, sent) : sent;
+    }
+
+    /**
+     * @return the selector of the outermost element appended for this element.
+     */
+    String getRootSelector() {
+        ensureId();
+        return wrapInGroup ? "#" + getWrappingGroupId() : "#" + id;
+    }
+
+    /**
+     * Resets the counter used for elements that are built without being added to an interface.
+     * Element IDs are otherwise allocated per interface, see {@link InterfaceBuilder}.
+     */
+    @Deprecated
     public static void resetIdCounter() {
-        idCounter = 0;
+        ElementIdAllocator.unscoped().reset();
+    }
+
+    /**
+     * Allocates the internal ID of this element from the given allocator, if it does not have one yet
+     * or only has a provisional one.
+     * Children added and keyed rows created later take their IDs from the same allocator, so the IDs
+     * of a tree only depend on the order its elements were added in.
+     */
+    synchronized void allocateId(ElementIdAllocator allocator) {
+        if (idAllocator == null) {
+            idAllocator = allocator;
+        }
+        allocateIndex(allocator);
+    }
+
+    /**
+     * Allocates the IDs of a child added after this element got its ID, and of the child's own children.
+     */
+    private void allocateIds(UIElementBuilder<?> child) {
+        ElementIdAllocator allocator = idAllocator;
+        if (allocator == null) {
+            return;
+        }
+        child.allocateId(allocator);
+        for (UIElementBuilder<?> grandChild : child.children) {
+            child.allocateIds(grandChild);
+        }
+    }
+
+    private synchronized void allocateIndex(ElementIdAllocator allocator) {
+        if (idIndex >= 0 && !provisionalId) {
+            return;
+        }
+        if (provisionalId && userId != null && userId.equals(id)) {
+            // The provisional ID was generated, not set with withId.
+            this.userId = null;
+        }
+        this.provisionalId = allocator == ElementIdAllocator.unscoped();
+        this.idScope = allocator.scope();
+        this.idIndex = allocator.nextIndex();
+        updateId();
+    }
+
+    /**
+     * @return true if the ID of this element was set with {@link #withId(String)}.
+     */
+    synchronized boolean hasExplicitId() {
+        return userId != null && !userId.equals(id);
+    }
+
+    /**
+     * Gives an element that was not added to an interface yet a provisional ID, which is
+     * replaced by the ID of the tree once the element is registered.
+     */
+    private void ensureId() {
+        if (id == null) {
+            allocateIndex(ElementIdAllocator.unscoped());
+        }
+    }
+
+    private void updateId() {
+        if (idIndex < 0) {
+            return;
+        }
+        String base = userId != null ? userId : idBase;
+        this.id = ElementIdAllocator.format(base, idScope, idIndex);
+        if (userId == null) {
+            this.userId = id;
+        }
     }
 
     /**
@@ -118,25 +383,15 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
      */
     @SuppressWarnings("unchecked")
     public T withId(String id) {
+        checkNotFrozen();
         if (id != null) {
-            this.userId = id;
-            this.id = sanitizeId(id);
-        }
-        return (T) this;
-    }
-
-    private String sanitizeId(String id) {
-        if (id == null) return null;
-        StringBuilder sb = new StringBuilder();
-        sb.append("HYUUID");
-        for (int i = 0; i < id.length(); i++) {
-            char c = id.charAt(i);
-            if (Character.isLetterOrDigit(c)) {
-                sb.append(c);
+            synchronized (this) {
+                this.userId = id;
+                updateId();
             }
+            markDirty(STRUCTURE);
         }
-        sb.append(idCounter++);
-        return sb.toString();
+        return (T) this;
     }
 
     /**
@@ -147,7 +402,9 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
     @Deprecated(forRemoval = true)
     @SuppressWarnings("unchecked")
     public T withStyle(String style) {
+        checkNotFrozen();
         this.style = style;
+        markDirty(STRUCTURE);
         return (T) this;
     }
 
@@ -159,8 +416,10 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
      */
     @SuppressWarnings("unchecked")
     public T withStyle(HyUIStyle style) {
+        checkNotFrozen();
         if (supportsStyling()) {
             this.hyUIStyle = style;
+            markDirty(STRUCTURE);
         }
         return (T) this;
     }
@@ -175,6 +434,7 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
      */
     @SuppressWarnings("unchecked")
     public T inside(String parentSelector) {
+        checkNotFrozen();
         this.parentSelector = parentSelector;
         return (T) this;
     }
@@ -188,6 +448,7 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
      */
     @SuppressWarnings("unchecked")
     protected T withWrappingGroup(boolean wrapInGroup) {
+        checkNotFrozen();
         this.wrapInGroup = wrapInGroup;
         return (T) this;
     }
@@ -201,7 +462,9 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
      */
     @SuppressWarnings("unchecked")
     public T withAnchor(HyUIAnchor anchor) {
+        checkNotFrozen();
         this.anchor = anchor;
+        markDirty(STRUCTURE);
         return (T) this;
     }
 
@@ -213,10 +476,56 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
      */
     @SuppressWarnings("unchecked")
     public T withVisible(boolean visible) {
+        checkNotFrozen();
         this.visible = visible;
+        markDirty("Visible");
+        return (T) this;
+    }
+
+    /**
+     * Binds the visibility of the UI element to a supplier, evaluated every time the HUD refreshes.
+     * Only changes from the last sent value are sent.
+     *
+     * @param visible supplies whether the element should be visible, or null to remove the binding.
+     * @return the builder instance of type {@code T} for method chaining
+     */
+    @SuppressWarnings("unchecked")
+    public T bindVisible(Supplier<Boolean> visible) {
+        bind("Visible", visible);
         return (T) this;
     }
 
+    /**
+     * Binds a dynamic property (Text, TitleText, Value or Visible) to a supplier. The binding takes
+     * precedence over the value set through the matching {@code with} method.
+     *
+     * @param property the property name.
+     * @param supplier supplies the current value, or null to remove the binding.
+     */
+    protected void bind(String property, Supplier<?> supplier) {
+        checkNotFrozen();
+        if (supplier != null) {
+            bindings.put(property, supplier);
+        } else {
+            bindings.remove(property);
+        }
+        markDirty(property);
+    }
+
+    boolean isBound(String property) {
+        return bindings.containsKey(property);
+    }
+
+    /**
+     * Wraps the supplier of a dynamic slot so it reads from the binding of the property, if there is one.
+     */
+    Supplier<?> boundValue(String property, Supplier<?> value) {
+        return () -> {
+            Supplier<?> binding = bindings.get(property);
+            return binding != null ? binding.get() : value.get();
+        };
+    }
+
     /**
      * Configures the tooltip text span for the UI element.
      * This is displayed in-game on mouse hover.
@@ -226,7 +535,9 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
      */
     @SuppressWarnings("unchecked")
     public T withTooltipTextSpan(Message message) {
+        checkNotFrozen();
         this.tooltipTextSpan = message;
+        markDirty(STRUCTURE);
         return (T) this;
     }
 
@@ -240,7 +551,9 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
      */
     @SuppressWarnings("unchecked")
     public T withFlexWeight(int weight) {
+        checkNotFrozen();
         this.flexWeight = weight;
+        markDirty(STRUCTURE);
         return (T) this;
     }
 
@@ -257,10 +570,27 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
      */
     @SuppressWarnings("unchecked")
     public T editElementAfter(BiConsumer<UICommandBuilder, String> callback) {
+        checkNotFrozen();
         this.editAfterCallbacks.add(callback);
+        markDirty(STRUCTURE);
         return (T) this;
     }
 
+    /**
+     * Registers a callback to modify the UI element after its initial configuration, under a key that
+     * identifies the edit it makes. When a HUD is updated with a new builder, an element whose callbacks
+     * have the same keys as those of the element it replaces is patched instead of built again, see
+     * {@link HudBuilder#updateExisting(HyUIHud)}. Callbacks without a key only match themselves.
+     *
+     * @param key      identifies the edit, e.g. the property and value it sets. Callbacks with equal
+     *                 keys must make the same edit.
+     * @param callback the callback, see {@link #editElementAfter(BiConsumer)}.
+     * @return the current builder instance of type {@code T} for method chaining
+     */
+    public T editElementAfter(Object key, BiConsumer<UICommandBuilder, String> callback) {
+        return editElementAfter(new KeyedEdit(key, callback));
+    }
+
     /**
      * Registers a callback to modify the UI element before its initial configuration.
      * This method adds the provided callback to a list of "edit before" callbacks,
@@ -274,41 +604,111 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
      */
     @SuppressWarnings("unchecked")
     public T editElementBefore(BiConsumer<UICommandBuilder, String> callback) {
+        checkNotFrozen();
         this.editBeforeCallbacks.add(callback);
+        markDirty(STRUCTURE);
         return (T) this;
     }
 
+    /**
+     * Registers a callback to modify the UI element before its initial configuration, under a key that
+     * identifies the edit it makes, see {@link #editElementAfter(Object, BiConsumer)}.
+     *
+     * @param key      identifies the edit. Callbacks with equal keys must make the same edit.
+     * @param callback the callback, see {@link #editElementBefore(BiConsumer)}.
+     * @return the current builder instance of type {@code T} for method chaining
+     */
+    public T editElementBefore(Object key, BiConsumer<UICommandBuilder, String> callback) {
+        return editElementBefore(new KeyedEdit(key, callback));
+    }
+
     /**
      * Handles the building process of a UI element, optionally wrapping it in a group if configured.
      * This method modifies the structure and commands for the UI element being constructed.
      *
-     * @param commands an instance of {@code UICommandBuilder} used to construct UI commands
-     * @param events   an instance of {@code UIEventBuilder} used to register and handle UI events
-     */
-    protected void build(UICommandBuilder commands, UIEventBuilder events) {
-        if (wrapInGroup && parentSelector != null) {
-            String wrappingGroupId = getWrappingGroupId();
-            HyUIPlugin.getLog().logInfo("Creating wrapping group: #" + wrappingGroupId + " for element: " + (typeSelector != null ? typeSelector : elementPath));
-            commands.appendInline(parentSelector, "Group #" + wrappingGroupId + " {}");
-            
-            // The inner element should be inside the wrapping group
-            String originalParent = parentSelector;
-            parentSelector = "#" + wrappingGroupId;
-            executeBuild(commands, events);
-            parentSelector = originalParent;
-        } else {
-            executeBuild(commands, events);
+     * @param commands an instance of {@code UICommandRecorder} used to record UI commands and event bindings
+     */
+    protected void build(UICommandRecorder commands) {
+        build(commands, parentSelector, true);
+    }
+
+    /**
+     * Builds this element inside the given parent selector, as resolved by its parent element.
+     * The element itself is not changed, so a shared element can be built by several interfaces at once.
+     */
+    void build(UICommandRecorder commands, String parent) {
+        build(commands, parent, true);
+    }
+
+    /**
+     * Records the commands of this element alone, leaving out its children. Used to compare an element
+     * with the element it replaces, see {@link ElementTreeDiff}.
+     */
+    void buildWithoutChildren(UICommandRecorder commands, String parent) {
+        build(commands, parent, false);
+    }
+
+    private void build(UICommandRecorder commands, String parent, boolean withChildren) {
+        ensureId();
+        UIElementBuilder<?> enclosing = commands.enter(this);
+        try {
+            if (wrapInGroup && parent != null) {
+                String wrappingGroupId = getWrappingGroupId();
+                HyUIPlugin.getLog().logFine("Creating wrapping group: #%s for element: %s", wrappingGroupId, (typeSelector != null ? typeSelector : elementPath));
+                commands.appendInline(parent, "Group #" + wrappingGroupId + " {}");
+
+                // The inner element should be inside the wrapping group
+                executeBuild(commands, "#" + wrappingGroupId, withChildren);
+            } else {
+                executeBuild(commands, parent, withChildren);
+            }
+        } finally {
+            commands.leave(enclosing);
+        }
+    }
+
+    /**
+     * Hashes the static commands of this element alone, along with the IDs of its children, see
+     * {@link UICommandProgram#isStructureUnchanged(long)}. The hash is kept until the element changes.
+     *
+     * @param parent the selector this element is appended to.
+     * @return the hash of this element's own structure.
+     */
+    synchronized long structureHash(String parent) {
+        long current = version;
+        if (current != structureHashVersion || !Objects.equals(parent, structureHashParent)) {
+            UICommandRecorder commands = UICommandRecorderPool.acquire();
+            try {
+                buildWithoutChildren(commands, parent);
+                long hash = 1;
+                for (int i = 0; i < commands.size(); i++) {
+                    hash = UICommandProgram.hashCommand(hash, commands, i);
+                }
+                structureHash = UICommandProgram.hashChildren(hash, this);
+            } finally {
+                UICommandRecorderPool.release(commands);
+            }
+            // A change made while building is hashed again on the next call.
+            structureHashVersion = current;
+            structureHashParent = parent;
         }
+        return structureHash;
     }
 
-    protected void buildBase(UICommandBuilder commands, UIEventBuilder events) {
+    /**
+     * Records the commands creating this element and setting its own properties.
+     *
+     * @param commands       the recorder to write to.
+     * @param parentSelector the resolved selector this element is appended to, or null to only set properties.
+     */
+    protected void buildBase(UICommandRecorder commands, String parentSelector) {
         String selector = getSelector();
-        HyUIPlugin.getLog().logInfo("Building element: " + (typeSelector != null ? typeSelector : elementPath) + " with ID: " + id + " at selector: " + selector);
+        HyUIPlugin.getLog().logFine("Building element: %s with ID: %s at selector: %s", (typeSelector != null ? typeSelector : elementPath), id, selector);
 
         if (parentSelector != null) {
             String path = getAppendPath();
             if (path != null && path.endsWith(".ui")) {
-                HyUIPlugin.getLog().logInfo("Appending UI file: " + path + " to " + parentSelector);
+                HyUIPlugin.getLog().logFine("Appending UI file: %s to %s", path, parentSelector);
                 commands.append(parentSelector, path);
                 
                 // If it's a file but NOT wrapped, we need to set the ID of the root element in that file
@@ -319,27 +719,28 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
                 }
             } else {
                 String inline = generateBasicInlineMarkup();
-                HyUIPlugin.getLog().logInfo("Appending inline: " + inline + " to " + parentSelector);
+                HyUIPlugin.getLog().logFine("Appending inline: %s to %s", inline, parentSelector);
                 commands.appendInline(parentSelector, inline);
             }
 
             if (anchor != null) {
-                HyUIPlugin.getLog().logInfo("Setting Anchor for " + selector);
-                commands.setObject(selector + ".Anchor", anchor.toHytaleAnchor());
+                HyUIPlugin.getLog().logFine("Setting Anchor for %s", selector);
+                // Recorded as a copy so rebuilds with an equal anchor can be recognised, see UICommandProgram#structureHash.
+                commands.setObject(selector + ".Anchor", anchor.copy());
             }
 
             if (visible != null) {
-                HyUIPlugin.getLog().logInfo("Setting Visible: " + visible + " for " + selector);
-                commands.set(selector + ".Visible", visible);
+                HyUIPlugin.getLog().logFine("Setting Visible: %s for %s", visible, selector);
             }
+            commands.setSlot(selector + ".Visible", this, "Visible", () -> visible);
 
             if (tooltipTextSpan != null) {
-                HyUIPlugin.getLog().logInfo("Setting TooltipTextSpans for " + selector);
+                HyUIPlugin.getLog().logFine("Setting TooltipTextSpans for %s", selector);
                 commands.set(selector + ".TooltipTextSpans", tooltipTextSpan);
             }
 
             if (flexWeight != null) {
-                HyUIPlugin.getLog().logInfo("Setting FlexWeight: " + flexWeight + " for " + selector);
+                HyUIPlugin.getLog().logFine("Setting FlexWeight: %s for %s", flexWeight, selector);
                 commands.set(selector + ".FlexWeight", flexWeight);
             }
 
@@ -369,12 +770,14 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
 
     @SuppressWarnings("unchecked")
     protected <V> T addEventListenerInternal(CustomUIEventBindingType type, Consumer<V> callback) {
+        checkNotFrozen();
         this.listeners.add(new UIEventListener<>(type, (val, ctx) -> ((Consumer<Object>) callback).accept(val)));
         return (T) this;
     }
 
     @SuppressWarnings("unchecked")
     protected <V> T addEventListenerInternal(CustomUIEventBindingType type, BiConsumer<V, UIContext> callback) {
+        checkNotFrozen();
         this.listeners.add(new UIEventListener<>(type, callback));
         return (T) this;
     }
@@ -406,61 +809,15 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
     /**
      * Applies the provided style settings to the given command builder while handling unsupported properties.
      *
-     * @param commands The UICommandBuilder used to set style properties.
+     * @param commands The UICommandRecorder used to set style properties.
      * @param prefix A string used as a prefix for property keys when applying the styles.
      * @param style An instance of HyUIStyle containing the properties to be applied to the command builder.
      */
-    protected void applyStyle(UICommandBuilder commands, String prefix, HyUIStyle style) {
-        Set<String> unsupported = getUnsupportedStyleProperties();
-        if (style.getFontSize() != null && !unsupported.contains("FontSize")) {
-            HyUIPlugin.getLog().logInfo("Setting Style FontSize: " + style.getFontSize() + " for " + prefix);
-            commands.set(prefix + ".FontSize", style.getFontSize().doubleValue());
-        }
-        if (style.getRenderBold() != null && !unsupported.contains("RenderBold")) {
-            HyUIPlugin.getLog().logInfo("Setting Style RenderBold: " + style.getRenderBold() + " for " + prefix);
-            commands.set(prefix + ".RenderBold", style.getRenderBold());
-        }
-        if (style.getRenderUppercase() != null && !unsupported.contains("RenderUppercase")) {
-            HyUIPlugin.getLog().logInfo("Setting Style RenderUppercase: " + style.getRenderUppercase() + " for " + prefix);
-            commands.set(prefix + ".RenderUppercase", style.getRenderUppercase());
-        }
-        if (style.getTextColor() != null && !unsupported.contains("TextColor")) {
-            HyUIPlugin.getLog().logInfo("Setting Style TextColor: " + style.getTextColor() + " for " + prefix);
-            commands.set(prefix + ".TextColor", style.getTextColor());
+    protected void applyStyle(UICommandRecorder commands, String prefix, HyUIStyle style) {
+        for (HyUIStyle.StyleCommand command : style.compile(getUnsupportedStyleProperties())) {
+            HyUIPlugin.getLog().logFine("Setting Style%s: %s for %s", command.suffix(), command.value(), prefix);
+            commands.setValue(prefix + command.suffix(), command.value());
         }
-        if (style.getHorizontalAlignment() != null && !unsupported.contains("HorizontalAlignment")) {
-            HyUIPlugin.getLog().logInfo("Setting Style HorizontalAlignment: " + style.getHorizontalAlignment() + " for " + prefix);
-            commands.set(prefix + ".HorizontalAlignment", style.getHorizontalAlignment().name());
-        }
-        if (style.getVerticalAlignment() != null && !unsupported.contains("VerticalAlignment")) {
-            HyUIPlugin.getLog().logInfo("Setting Style VerticalAlignment: " + style.getVerticalAlignment() + " for " + prefix);
-            commands.set(prefix + ".VerticalAlignment", style.getVerticalAlignment().name());
-        }
-        if (style.getAlignment() != null && !unsupported.contains("Alignment")) {
-            HyUIPlugin.getLog().logInfo("Setting Style Alignment: " + style.getAlignment() + " for " + prefix);
-            commands.set(prefix + ".Alignment", style.getAlignment().name());
-        }
-
-        style.getRawProperties().forEach((key, value) -> {
-            HyUIPlugin.getLog().logInfo("Setting Style Raw Property: " + key + "=" + value + " for " + prefix);
-            if (value instanceof String) {
-                commands.set(prefix + "." + key, (String) value);
-            } else if (value instanceof Boolean) {
-                commands.set(prefix + "." + key, (Boolean) value);
-            } else if (value instanceof Double) {
-                commands.set(prefix + "." + key, (Double) value);
-            } else if (value instanceof Integer) {
-                commands.set(prefix + "." + key, (Integer) value);
-            } else if (value instanceof Float) {
-                commands.set(prefix + "." + key, ((Float) value).doubleValue());
-            } else {
-                commands.set(prefix + "." + key, String.valueOf(value));
-            }
-        });
-
-        style.getStates().forEach((state, nestedStyle) -> {
-            applyStyle(commands, prefix + "." + state, nestedStyle);
-        });
     }
 
     protected String getWrappingGroupId() {
@@ -472,37 +829,51 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
      * and events within the provided builders. If the current element has a selector, 
      * each child is nested inside that selector during the build process.
      *
-     * @param commands an instance of {@code UICommandBuilder} used for constructing 
-     *                 UI commands associated with the child elements
-     * @param events   an instance of {@code UIEventBuilder} used for setting up event 
-     *                 handling for the child elements
+     * @param commands an instance of {@code UICommandRecorder} used for recording 
+     *                 UI commands and event bindings associated with the child elements
      */
-    protected void buildChildren(UICommandBuilder commands, UIEventBuilder events) {
+    protected void buildChildren(UICommandRecorder commands) {
         String selector = getSelector();
         if (selector != null) {
-            for (UIElementBuilder<?> child : children) {
-                child.inside(selector).build(commands, events);
-            }
+            commands.buildAll(children, this);
         }
     }
 
-    private void executeBuild(UICommandBuilder commands, UIEventBuilder events) {
-        buildBase(commands, events);
+    /**
+     * Resolves the selector a child is appended to when it is built inside this element.
+     * Must not change the child, see {@link #build(UICommandRecorder, String)}.
+     */
+    protected String resolveChildParent(UIElementBuilder<?> child) {
+        return getSelector();
+    }
+
+    /**
+     * @param parent the element this element is built inside, or null for a top level element.
+     * @return the selector this element is appended to.
+     */
+    String parentIn(UIElementBuilder<?> parent) {
+        return parent != null ? parent.resolveChildParent(this) : parentSelector;
+    }
+
+    private void executeBuild(UICommandRecorder commands, String parent, boolean withChildren) {
+        buildBase(commands, parent);
 
         String selector = getSelector();
         for (BiConsumer<UICommandBuilder, String> callback : editBeforeCallbacks) {
-            callback.accept(commands, selector);
+            commands.edit(callback, selector);
         }
 
-        onBuild(commands, events);
-        buildChildren(commands, events);
+        onBuild(commands);
+        if (withChildren) {
+            buildChildren(commands);
+        }
 
         for (BiConsumer<UICommandBuilder, String> callback : editAfterCallbacks) {
-            callback.accept(commands, selector);
+            commands.edit(callback, selector);
         }
     }
 
-    private String generateUniqueId() {
+    private String generateIdBase() {
         String base = elementPath;
         if (base != null) {
             // Get last part of the path
@@ -516,6 +887,6 @@ public abstract class UIElementBuilder<T extends UIElementBuilder<T>> {
         } else {
             base = "Element";
         }
-        return sanitizeId(base);
+        return base;
     }
 }
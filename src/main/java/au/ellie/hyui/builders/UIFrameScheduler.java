@@ -0,0 +1,458 @@
+package au.ellie.hyui.builders;
+
+import au.ellie.hyui.HyUIPlugin;
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs UI work, such as HUD refreshes and coalesced flushes, within a budget per world tick.
+ *
+ * Every world has its own queue, which is drained on the world's thread as one of the tasks the
+ * world runs in its tick. Work is run highest priority first, until the time or command budget of
+ * the drain is spent. Whatever is left is drained again the next time the world runs its tasks, so
+ * a burst of players joining at once spreads its UI building over several ticks instead of stalling one.
+ * UI work done on the world thread outside the queue, such as building a page or handling a page
+ * event, is charged to the budget of the world's next drain.
+ *
+ * Flushes are queued apart from other work, and run at the end of the drain, after the refresh
+ * listeners and other work that changed the elements, so every change of the tick goes out together.
+ * Every flush queued by then runs, even once the work spent the budget.
+ *
+ * Work is queued under a key, and work for a key that is already queued is merged into it. Queued
+ * work should therefore read the current state when it runs, rather than the state it was queued with.
+ * Work that touches no world, such as building a broadcast HUD, runs on a shared queue of its own.
+ */
+public final class UIFrameScheduler {
+    /**
+     * The priority of queued UI work, highest first.
+     */
+    public enum Priority {
+        /**
+         * Work caused by the player interacting with a page, such as a button press.
+         */
+        INTERACTIVE,
+        /**
+         * Regular HUD updates, the default.
+         */
+        NORMAL,
+        /**
+         * HUDs that are purely decorative and can lag behind when the server is busy.
+         */
+        DECORATIVE
+    }
+
+    /**
+     * How long work left over in the shared queue waits before it runs, in milliseconds.
+     */
+    static final long SHARED_RETRY_MS = 50;
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private static final ThreadLocal<Boolean> interactive = ThreadLocal.withInitial(() -> false);
+    private static final ThreadLocal<FrameQueue> draining = new ThreadLocal<>();
+    // Worlds are only held weakly, a queue does not keep an unloaded world alive.
+    private static final Map<Executor, FrameQueue> worldQueues = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final FrameQueue sharedQueue = new FrameQueue();
+
+    private static volatile long timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(5);
+    private static volatile int commandBudget;
+
+    private static final AtomicLong deferred = new AtomicLong();
+    private static final AtomicLong overBudgetTicks = new AtomicLong();
+
+    private UIFrameScheduler() {
+    }
+
+    /**
+     * Sets how long UI work may run per world tick. At least one piece of work runs every tick, however long it takes.
+     *
+     * @param millis the time budget per tick, in milliseconds.
+     */
+    public static void setTimeBudgetMillis(double millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("The time budget must be positive.");
+        }
+        timeBudgetNanos = (long) (millis * 1_000_000);
+    }
+
+    public static double getTimeBudgetMillis() {
+        return timeBudgetNanos / 1_000_000.0;
+    }
+
+    /**
+     * Sets how many UI commands may be sent per world tick, across every player in the world.
+     *
+     * @param commands the command budget per tick, or 0 for no limit (default).
+     */
+    public static void setCommandBudget(int commands) {
+        commandBudget = Math.max(0, commands);
+    }
+
+    public static int getCommandBudget() {
+        return commandBudget;
+    }
+
+    /**
+     * Queues UI work that touches no world to run within the budget of the shared queue.
+     *
+     * @see #submit(Executor, Priority, Object, Runnable)
+     */
+    public static void submit(Priority priority, Object key, Runnable work) {
+        submit(null, priority, key, work);
+    }
+
+    /**
+     * Queues UI work to run on the thread of the given world, in the next tick that has budget left for it.
+     *
+     * @param world    the world whose thread runs the work, or null for work that touches no world.
+     * @param priority the priority of the work. Work queued while handling a page event is always
+     *                 {@link Priority#INTERACTIVE}.
+     * @param key      identifies the work, e.g. the HUD it updates. Work for a key that is already queued
+     *                 is merged into it, keeping the highest priority.
+     * @param work     the work to run.
+     */
+    public static void submit(Executor world, Priority priority, Object key, Runnable work) {
+        submit(world, false, priority, key, work);
+    }
+
+    /**
+     * Queues a flush to run on the thread of the given world at the end of its next drain, after the
+     * other work of the drain. Flushes queued by that work run in the same drain, whatever is left of its budget.
+     *
+     * @param world    the world whose thread runs the flush, or null for a flush that touches no world.
+     * @param priority the priority of the flush among the other flushes.
+     * @param key      identifies the flush, e.g. the multi-hud it sends. Flushes for a key that is
+     *                 already queued are merged into it.
+     * @param flush    the flush to run.
+     */
+    static void submitFlush(Executor world, Priority priority, Object key, Runnable flush) {
+        submit(world, true, priority, key, flush);
+    }
+
+    private static void submit(Executor world, boolean flush, Priority priority, Object key, Runnable work) {
+        Priority effective = interactive.get() ? Priority.INTERACTIVE : priority;
+        FrameQueue queue = queueOf(world);
+        synchronized (queue) {
+            (flush ? queue.flushes : queue.work).add(key, effective, work);
+            if (queue.drainScheduled) {
+                return;
+            }
+            queue.drainScheduled = true;
+        }
+        scheduleDrain(world, queue, false);
+    }
+
+    /**
+     * @return the world the given player is in, or null if the player is no longer in a world.
+     */
+    static Executor worldOf(PlayerRef playerRef) {
+        if (playerRef == null) {
+            return null;
+        }
+        Ref<EntityStore> ref = playerRef.getReference();
+        return ref != null ? ref.getStore().getExternalData().getWorld() : null;
+    }
+
+    /**
+     * @return the timer thread shared by HyUI, for refresh deadlines and waits on a player's packet budget.
+     *         Tasks run on it must be short, and hand anything heavier to {@link #submit(Executor, Priority, Object, Runnable)}.
+     */
+    static ScheduledExecutorService timer() {
+        return scheduler;
+    }
+
+    /**
+     * Runs the given action with every piece of work it queues marked as {@link Priority#INTERACTIVE},
+     * and charges the time it took to the budget of the given world, see {@link #runCharged(Executor, Runnable)}.
+     */
+    static void runInteractive(Executor world, Runnable action) {
+        boolean previous = interactive.get();
+        interactive.set(true);
+        try {
+            runCharged(world, action);
+        } finally {
+            interactive.set(previous);
+        }
+    }
+
+    /**
+     * Runs UI work that cannot wait for the queue, such as building a page, and charges the time it
+     * took to the budget of the world's next drain. Work run while the world's queue is being drained
+     * is already counted by the drain.
+     *
+     * @param world  the world the work runs for, or null to run it without charging anything.
+     * @param action the work.
+     */
+    static void runCharged(Executor world, Runnable action) {
+        FrameQueue queue = world != null ? queueOf(world) : null;
+        if (queue == null || draining.get() == queue) {
+            action.run();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            synchronized (queue) {
+                queue.chargedNanos += elapsed;
+            }
+        }
+    }
+
+    /**
+     * Counts UI commands sent to a player of the given world against the command budget of the
+     * world's current drain, or of its next one if the queue is not being drained.
+     *
+     * @param world    the world of the player, or null for the shared queue.
+     * @param commands the number of commands sent.
+     */
+    static void recordCommands(Executor world, int commands) {
+        FrameQueue queue = queueOf(world);
+        synchronized (queue) {
+            if (draining.get() == queue) {
+                queue.tickCommands += commands;
+            } else {
+                queue.chargedCommands += commands;
+            }
+        }
+    }
+
+    /**
+     * @return the number of times work was left queued for a later tick because the budget was spent.
+     */
+    public static long getDeferredCount() {
+        return deferred.get();
+    }
+
+    /**
+     * @return the number of world ticks in which UI work ran over the time budget.
+     */
+    public static long getOverBudgetTickCount() {
+        return overBudgetTicks.get();
+    }
+
+    /**
+     * @return the number of pieces of work waiting to run, across every world.
+     */
+    public static int getQueuedCount() {
+        int count;
+        synchronized (sharedQueue) {
+            count = sharedQueue.size();
+        }
+        FrameQueue[] queues;
+        synchronized (worldQueues) {
+            queues = worldQueues.values().toArray(new FrameQueue[0]);
+        }
+        for (FrameQueue queue : queues) {
+            synchronized (queue) {
+                count += queue.size();
+            }
+        }
+        return count;
+    }
+
+    private static FrameQueue queueOf(Executor world) {
+        return world != null ? worldQueues.computeIfAbsent(world, w -> new FrameQueue()) : sharedQueue;
+    }
+
+    private static void scheduleDrain(Executor world, FrameQueue queue, boolean retry) {
+        Runnable drain = () -> drain(world, queue);
+        try {
+            if (world != null) {
+                world.execute(drain);
+            } else if (retry) {
+                scheduler.schedule(drain, SHARED_RETRY_MS, TimeUnit.MILLISECONDS);
+            } else {
+                scheduler.execute(drain);
+            }
+        } catch (RuntimeException e) {
+            // The world is shutting down, its players and their UI go with it.
+            HyUIPlugin.getLog().logWarning("Could not queue UI work: %s %s", e.getClass().getName(), e.getMessage());
+            synchronized (queue) {
+                queue.clear();
+            }
+        }
+    }
+
+    private static void drain(Executor world, FrameQueue queue) {
+        long start = System.nanoTime();
+        long spent;
+        synchronized (queue) {
+            spent = queue.chargedNanos;
+            queue.tickCommands = queue.chargedCommands;
+            queue.chargedNanos = 0;
+            queue.chargedCommands = 0;
+        }
+        long deadline = start + timeBudgetNanos - spent;
+
+        FrameQueue enclosing = draining.get();
+        draining.set(queue);
+        try {
+            runLane(queue, queue.work, deadline);
+            // Flushes run even when the work spent the budget, so the changes the work made go out this tick.
+            runFlushes(queue);
+        } finally {
+            draining.set(enclosing);
+        }
+
+        if (System.nanoTime() - start + spent > timeBudgetNanos) {
+            overBudgetTicks.incrementAndGet();
+        }
+        boolean again;
+        synchronized (queue) {
+            again = queue.size() > 0;
+            queue.drainScheduled = again;
+        }
+        if (again) {
+            scheduleDrain(world, queue, true);
+        }
+    }
+
+    /**
+     * Runs the entries of a lane, highest priority first, until it is empty or the budget is spent.
+     * At least one entry runs, however much of the budget was spent.
+     */
+    private static void runLane(FrameQueue queue, Lane lane, long deadline) {
+        boolean first = true;
+        while (true) {
+            Entry entry;
+            synchronized (queue) {
+                if (!first && (System.nanoTime() >= deadline || (commandBudget > 0 && queue.tickCommands >= commandBudget))) {
+                    if (lane.size() > 0) {
+                        deferred.addAndGet(lane.size());
+                    }
+                    return;
+                }
+                entry = lane.poll();
+                if (entry == null) {
+                    return;
+                }
+            }
+            first = false;
+            run(entry);
+        }
+    }
+
+    /**
+     * Runs every flush queued before the call, highest priority first, regardless of the budget.
+     * Flushes queued while they run wait for the next tick, so a flush cannot keep the world busy.
+     */
+    private static void runFlushes(FrameQueue queue) {
+        int pending;
+        synchronized (queue) {
+            pending = queue.flushes.size();
+        }
+        for (; pending > 0; pending--) {
+            Entry entry;
+            synchronized (queue) {
+                entry = queue.flushes.poll();
+            }
+            if (entry == null) {
+                return;
+            }
+            run(entry);
+        }
+    }
+
+    private static void run(Entry entry) {
+        try {
+            entry.work.run();
+        } catch (RuntimeException e) {
+            // An exception would leave the rest of the queue waiting forever.
+            HyUIPlugin.getLog().logWarning("UI work for %s failed: %s", entry.key, e);
+        }
+    }
+
+    /**
+     * The work queued for one world, guarded by its own monitor.
+     */
+    private static final class FrameQueue {
+        private final Lane work = new Lane();
+        private final Lane flushes = new Lane();
+        private boolean drainScheduled;
+        // Spent outside the queue since the last drain, taken from the budget of the next one.
+        private long chargedNanos;
+        private long chargedCommands;
+        private long tickCommands;
+
+        private int size() {
+            return work.size() + flushes.size();
+        }
+
+        private void clear() {
+            work.clear();
+            flushes.clear();
+            drainScheduled = false;
+        }
+    }
+
+    /**
+     * Entries queued by priority and merged by key, guarded by the monitor of their queue.
+     */
+    private static final class Lane {
+        private final Map<Object, Entry> queued = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        private final ArrayDeque<Entry>[] queues = new ArrayDeque[]{new ArrayDeque<>(), new ArrayDeque<>(), new ArrayDeque<>()};
+
+        private void add(Object key, Priority priority, Runnable work) {
+            Entry existing = queued.get(key);
+            if (existing != null) {
+                if (priority.ordinal() < existing.priority.ordinal()) {
+                    queues[existing.priority.ordinal()].remove(existing);
+                    existing.priority = priority;
+                    queues[priority.ordinal()].add(existing);
+                }
+                return;
+            }
+            Entry entry = new Entry(key, priority, work);
+            queued.put(key, entry);
+            queues[priority.ordinal()].add(entry);
+        }
+
+        private Entry poll() {
+            for (ArrayDeque<Entry> queue : queues) {
+                Entry entry = queue.poll();
+                if (entry != null) {
+                    queued.remove(entry.key);
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        private int size() {
+            return queued.size();
+        }
+
+        private void clear() {
+            queued.clear();
+            for (ArrayDeque<Entry> queue : queues) {
+                queue.clear();
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final Object key;
+        private final Runnable work;
+        private Priority priority;
+
+        private Entry(Object key, Priority priority, Runnable work) {
+            this.key = key;
+            this.priority = priority;
+            this.work = work;
+        }
+    }
+}
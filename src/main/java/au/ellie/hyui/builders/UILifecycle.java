@@ -0,0 +1,206 @@
+package au.ellie.hyui.builders;
+
+import au.ellie.hyui.HyUIPlugin;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Releases the HUDs, pages and timers of a player when they disconnect, moves their HUDs along when they
+ * change worlds, and counts the HyUI structures that are still alive, to help find UI that is kept around
+ * by mistake.
+ *
+ * HUDs, pages and broadcast HUDs are only held weakly here, so the counts drop once the garbage
+ * collector has reclaimed them. A count that keeps growing while players come and go is a leak.
+ */
+public final class UILifecycle {
+    private static final Map<PlayerRef, Set<HyUIMultiHud>> multiHuds = new ConcurrentHashMap<>();
+    private static final Set<HyUIHud> liveHuds = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static final Set<HyUIPage> livePages = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static final Map<PlayerRef, Set<HyUIPage>> pages = new ConcurrentHashMap<>();
+    private static final Set<HyUIBroadcastHud> broadcasts = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static final List<Consumer<PlayerRef>> releaseListeners = new CopyOnWriteArrayList<>();
+
+    private UILifecycle() {
+    }
+
+    static void track(HyUIHud hud) {
+        liveHuds.add(hud);
+    }
+
+    static void track(PlayerRef playerRef, HyUIPage page) {
+        livePages.add(page);
+        if (playerRef != null) {
+            pages.computeIfAbsent(playerRef, p -> Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()))).add(page);
+        }
+    }
+
+    static void untrack(PlayerRef playerRef, HyUIPage page) {
+        if (playerRef != null) {
+            pages.computeIfPresent(playerRef, (p, open) -> open.remove(page) && open.isEmpty() ? null : open);
+        }
+    }
+
+    static void track(HyUIBroadcastHud broadcast) {
+        broadcasts.add(broadcast);
+    }
+
+    static void track(PlayerRef playerRef, HyUIMultiHud multiHud) {
+        multiHuds.computeIfAbsent(playerRef, p -> ConcurrentHashMap.newKeySet()).add(multiHud);
+    }
+
+    /**
+     * Registers a listener called whenever the UI of a player is released, for example to drop
+     * references to the player's HUDs kept by your own mod.
+     *
+     * @param listener called with the player whose UI was released.
+     */
+    public static void addReleaseListener(Consumer<PlayerRef> listener) {
+        releaseListeners.add(listener);
+    }
+
+    /**
+     * Pauses the multi-huds of a player leaving a world: their refresh timers stop and pending updates are
+     * dropped, but their HUDs are kept, to be shown again by {@link #attachPlayer(PlayerRef, Executor)}.
+     * Called automatically when a player leaves a world.
+     *
+     * @param playerRef the player leaving a world.
+     */
+    public static void detachPlayer(PlayerRef playerRef) {
+        Set<HyUIMultiHud> detached = multiHuds.get(playerRef);
+        if (detached != null) {
+            for (HyUIMultiHud multiHud : detached) {
+                multiHud.detach();
+            }
+        }
+    }
+
+    /**
+     * Shows the multi-huds of a player again once they joined a world, and restarts their refresh timers.
+     * The client drops its HUD when the player changes worlds, so every HUD is sent again in full, from
+     * the world's thread. Called automatically when a player is added to a world.
+     *
+     * @param playerRef the player added to a world.
+     * @param world     the world the player was added to, or null to show the HUDs right away.
+     */
+    public static void attachPlayer(PlayerRef playerRef, Executor world) {
+        Set<HyUIMultiHud> attached = multiHuds.get(playerRef);
+        if (attached != null) {
+            for (HyUIMultiHud multiHud : attached) {
+                multiHud.attach(world);
+            }
+        }
+    }
+
+    /**
+     * Releases every HyUI structure of a player: the player is unsubscribed from broadcast HUDs, every
+     * multi-hud of the player stops its refresh timers, drops pending updates and lets go of its HUDs,
+     * and every page still open lets go of its elements.
+     * Called automatically when a player disconnects.
+     *
+     * @param playerRef the player to release.
+     */
+    public static void releasePlayer(PlayerRef playerRef) {
+        // Released first, so nothing below builds or queues a packet for the player who is gone.
+        Set<HyUIMultiHud> released = multiHuds.remove(playerRef);
+        if (released != null) {
+            for (HyUIMultiHud multiHud : released) {
+                multiHud.release();
+            }
+        }
+
+        List<HyUIBroadcastHud> subscribed;
+        synchronized (broadcasts) {
+            subscribed = new ArrayList<>(broadcasts);
+        }
+        for (HyUIBroadcastHud broadcast : subscribed) {
+            broadcast.release(playerRef);
+        }
+        List<HyUIPage> open = new ArrayList<>();
+        Set<HyUIPage> releasedPages = pages.remove(playerRef);
+        if (releasedPages != null) {
+            synchronized (releasedPages) {
+                open.addAll(releasedPages);
+            }
+        }
+        for (HyUIPage page : open) {
+            page.release();
+        }
+        for (Consumer<PlayerRef> listener : releaseListeners) {
+            listener.accept(playerRef);
+        }
+        HyUIPlugin.getLog().logInfo("Released UI of player, %s multi-huds, %s pages",
+                released != null ? released.size() : 0, open.size());
+    }
+
+    /**
+     * @return the number of players with a multi-hud that was not released yet.
+     */
+    public static int getTrackedPlayerCount() {
+        return multiHuds.size();
+    }
+
+    /**
+     * @return the number of players with a page that was not closed or released yet.
+     */
+    public static int getOpenPagePlayerCount() {
+        return pages.size();
+    }
+
+    /**
+     * @return the number of HUDs that were not garbage collected yet.
+     */
+    public static int getLiveHudCount() {
+        return liveHuds.size();
+    }
+
+    /**
+     * @return the number of pages that were not garbage collected yet.
+     */
+    public static int getLivePageCount() {
+        return livePages.size();
+    }
+
+    /**
+     * @return the number of element builders held by HUDs and pages that were not garbage collected yet.
+     *         Elements shared by several HUDs, such as those of a frozen builder, are counted once per HUD.
+     */
+    public static long getLiveElementCount() {
+        List<HyUInterface> interfaces = new ArrayList<>();
+        synchronized (liveHuds) {
+            for (HyUIHud hud : liveHuds) {
+                interfaces.add(hud.delegate);
+            }
+        }
+        synchronized (livePages) {
+            for (HyUIPage page : livePages) {
+                interfaces.add(page.getDelegate());
+            }
+        }
+        long count = 0;
+        for (HyUInterface ui : interfaces) {
+            count += countElements(ui.getElements());
+        }
+        return count;
+    }
+
+    private static long countElements(List<UIElementBuilder<?>> elements) {
+        if (elements == null) {
+            return 0;
+        }
+        long count = elements.size();
+        for (UIElementBuilder<?> element : elements) {
+            count += countElements(element.children);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,106 @@
+package au.ellie.hyui.builders;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket limiting how many UI packets are sent to a single player per second,
+ * along with counters for updates that were merged into a pending update or dropped.
+ */
+public final class UIPacketLimiter {
+    private double packetsPerMs;
+    private double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public UIPacketLimiter(int maxPacketsPerSecond) {
+        setMaxPacketsPerSecond(maxPacketsPerSecond);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * @param maxPacketsPerSecond the number of packets allowed per second, which is also the burst size.
+     */
+    public synchronized void setMaxPacketsPerSecond(int maxPacketsPerSecond) {
+        if (maxPacketsPerSecond <= 0) {
+            throw new IllegalArgumentException("maxPacketsPerSecond must be positive.");
+        }
+        this.capacity = maxPacketsPerSecond;
+        this.packetsPerMs = maxPacketsPerSecond / 1000.0;
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    /**
+     * Takes a packet from the budget if there is one left.
+     *
+     * @return true if a packet may be sent now.
+     */
+    synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            sent.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives back a packet taken by {@link #tryAcquire()} that turned out to have nothing to send.
+     */
+    synchronized void release() {
+        tokens = Math.min(capacity, tokens + 1);
+        sent.decrementAndGet();
+    }
+
+    /**
+     * @return the number of milliseconds until the next packet may be sent.
+     */
+    synchronized long millisUntilAvailable() {
+        refill();
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / packetsPerMs);
+    }
+
+    void recordMerged(int count) {
+        merged.addAndGet(count);
+    }
+
+    void recordDropped(int count) {
+        dropped.addAndGet(count);
+    }
+
+    /**
+     * @return the number of packets sent within the budget.
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * @return the number of updates that were folded into an update already waiting to be sent.
+     */
+    public long getMergedCount() {
+        return merged.get();
+    }
+
+    /**
+     * @return the number of updates that were discarded without being sent, because the player left.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double elapsedMs = (now - lastRefill) / 1_000_000.0;
+        lastRefill = now;
+        tokens = Math.min(capacity, tokens + elapsedMs * packetsPerMs);
+    }
+}
@@ -0,0 +1,81 @@
+package au.ellie.hyui.builders;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects HUDs that requested a flush and flushes them together at the end of the next drain of
+ * their world's UI queue, once per world tick, see {@link UIFrameScheduler#submitFlush}.
+ *
+ * Changes are only marked on the elements until the flush, so the last write to each property wins,
+ * and HUDs sharing a multi-hud are sent as a single update. The flushes run on the thread of the
+ * player's world, after the refresh listeners that change the elements, and count against the
+ * world's UI budget.
+ */
+final class UpdateCoalescer {
+    /**
+     * The flush requested for the HUDs of one multi-hud.
+     */
+    private static final class Pending {
+        private final Set<HyUIHud> huds = new LinkedHashSet<>();
+        private boolean redrawIfNeeded;
+    }
+
+    private static final Map<HyUIMultiHud, Pending> pending = new ConcurrentHashMap<>();
+
+    private UpdateCoalescer() {
+    }
+
+    static void submit(HyUIHud hud) {
+        HyUIMultiHud parent = hud.getParentMultiHud();
+        if (parent == null) {
+            UIFrameScheduler.submitFlush(UIFrameScheduler.worldOf(hud.getPlayerRef()), hud.getPriority(), hud, hud::flush);
+            return;
+        }
+        submit(parent, List.of(hud), true);
+    }
+
+    /**
+     * Queues a flush of the given HUDs of a multi-hud, merged with the flushes already requested for it.
+     *
+     * @param parent         the multi-hud of the HUDs.
+     * @param huds           the HUDs to flush.
+     * @param redrawIfNeeded whether to rebuild a HUD whose changes cannot be sent on their own.
+     */
+    static void submit(HyUIMultiHud parent, Collection<HyUIHud> huds, boolean redrawIfNeeded) {
+        UIFrameScheduler.Priority priority = UIFrameScheduler.Priority.DECORATIVE;
+        for (HyUIHud hud : huds) {
+            if (hud.getPriority().ordinal() < priority.ordinal()) {
+                priority = hud.getPriority();
+            }
+        }
+        // Added inside compute, so a request is never changed after the drain took it.
+        pending.compute(parent, (p, request) -> {
+            Pending merged = request != null ? request : new Pending();
+            merged.huds.addAll(huds);
+            merged.redrawIfNeeded |= redrawIfNeeded;
+            return merged;
+        });
+        UIFrameScheduler.submitFlush(UIFrameScheduler.worldOf(parent.getPlayerRef()), priority, parent, () -> drain(parent));
+    }
+
+    /**
+     * Drops the flushes requested for the HUDs of a released multi-hud.
+     */
+    static void release(HyUIMultiHud parent) {
+        pending.remove(parent);
+    }
+
+    private static void drain(HyUIMultiHud parent) {
+        Pending request = pending.remove(parent);
+        if (request == null) {
+            return;
+        }
+        // Requests made while draining start a new request, and queue the next flush.
+        parent.requestFlush(request.huds, request.redrawIfNeeded);
+    }
+}
@@ -0,0 +1,308 @@
+package au.ellie.hyui.builders;
+
+import au.ellie.hyui.HyUIPlugin;
+import au.ellie.hyui.elements.UIElements;
+import au.ellie.hyui.events.UIContext;
+import au.ellie.hyui.theme.Theme;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUIEventBindingType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.IntFunction;
+
+/**
+ * Builder for a scrolling list backed by a data source of any number of rows.
+ *
+ * Only the rows inside the visible window, plus a few rows of overscan on either side, are built
+ * and sent. The window is moved by the server, with {@link #scrollTo(int)}, paging or the buttons set
+ * by {@link #withPagingButtons(UIElementBuilder, UIElementBuilder)}, and on the next flush only the rows
+ * that entered or left it are sent, see {@link GroupBuilder#withKeyedChildren(java.util.List, java.util.function.Function)}.
+ * The client sends no event when a group is scrolled, so scrolling it with the mouse does not move the window.
+ *
+ * With a row height set, a spacer before and after the window stands in for the rows that are not
+ * built, so the list keeps the height, and the scroll bar the size, of the whole list.
+ *
+ * This directly translates to a {@code Group {}} with the {@code TopScrolling} layout.
+ */
+public class VirtualListBuilder extends UIElementBuilder<VirtualListBuilder> {
+    private String layoutMode = "TopScrolling";
+    private int rowCount;
+    private IntFunction<? extends UIElementBuilder<?>> rowFactory;
+    // Spacers are keyed rows too, their key changes with their height so a resize replaces them.
+    private static final String SPACER_KEY = "\u0000spacer:";
+
+    private IntFunction<String> rowKey = String::valueOf;
+    private int rowHeight;
+    private int visibleRows = 10;
+    private int overscan = 2;
+    private int firstVisibleRow;
+
+    public VirtualListBuilder() {
+        super(UIElements.GROUP, "Group");
+    }
+
+    public VirtualListBuilder(Theme theme) {
+        super(theme, UIElements.GROUP, "Group");
+    }
+
+    /**
+     * Factory method to create a new instance of {@code VirtualListBuilder}.
+     *
+     * @return A new {@code VirtualListBuilder} instance.
+     */
+    public static VirtualListBuilder virtualList() {
+        return new VirtualListBuilder();
+    }
+
+    /**
+     * Sets the data source of the list. Rows are only created when they enter the visible window.
+     * Every row built for an earlier data source is dropped and created again.
+     *
+     * @param rowCount   the total number of rows.
+     * @param rowFactory creates the row at the given index.
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder withRows(int rowCount, IntFunction<? extends UIElementBuilder<?>> rowFactory) {
+        checkNotFrozen();
+        this.rowCount = Math.max(0, rowCount);
+        this.rowFactory = rowFactory;
+        // Rows are reused by key, and keys of the new data may match those of the old data.
+        updateKeyedChildren(List.of(), key -> null);
+        updateWindow();
+        return this;
+    }
+
+    /**
+     * Changes the number of rows, keeping the current rows and scroll position where possible.
+     * Rows that stay in the window are kept by key, so with the default index keys a row whose data
+     * changed is not created again. Set {@link #withRowKey(IntFunction)} to keys that identify the data,
+     * or call {@link #withRows(int, IntFunction)} again, when the data behind the rows changes.
+     *
+     * @param rowCount the total number of rows.
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder withRowCount(int rowCount) {
+        checkNotFrozen();
+        this.rowCount = Math.max(0, rowCount);
+        updateWindow();
+        return this;
+    }
+
+    /**
+     * Sets the key of the row at each index. Rows are kept for as long as their key stays inside the
+     * window, so keys should identify the data of the row, e.g. a listing ID, rather than its position.
+     * Defaults to the row index.
+     *
+     * @param rowKey returns the unique key of the row at the given index.
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder withRowKey(IntFunction<String> rowKey) {
+        checkNotFrozen();
+        this.rowKey = rowKey;
+        updateWindow();
+        return this;
+    }
+
+    /**
+     * Sets how many rows fit in the visible window, also the distance moved by a page.
+     *
+     * @param visibleRows the number of visible rows, at least 1.
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder withVisibleRows(int visibleRows) {
+        checkNotFrozen();
+        this.visibleRows = Math.max(1, visibleRows);
+        updateWindow();
+        return this;
+    }
+
+    /**
+     * Sets the height of every row, to size the spacers standing in for the rows outside the window.
+     * Rows should be exactly this tall, e.g. with an anchor height. Defaults to 0, without spacers.
+     *
+     * @param rowHeight the height of a row.
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder withRowHeight(int rowHeight) {
+        checkNotFrozen();
+        this.rowHeight = Math.max(0, rowHeight);
+        updateWindow();
+        return this;
+    }
+
+    /**
+     * Moves the window by a page whenever one of the given buttons is clicked. On a page, the change is
+     * sent right away; call {@code flush()} yourself on anything else the list is shown in.
+     *
+     * @param previous the button moving the window up, or null.
+     * @param next     the button moving the window down, or null.
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder withPagingButtons(UIElementBuilder<?> previous, UIElementBuilder<?> next) {
+        if (previous != null) {
+            previous.addEventListenerWithContext(CustomUIEventBindingType.Activating, Void.class, (v, context) -> {
+                previousPage();
+                flush(context);
+            });
+        }
+        if (next != null) {
+            next.addEventListenerWithContext(CustomUIEventBindingType.Activating, Void.class, (v, context) -> {
+                nextPage();
+                flush(context);
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Sets how many extra rows are built before and after the visible window.
+     *
+     * @param overscan the number of rows on either side, defaults to 2.
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder withOverscan(int overscan) {
+        checkNotFrozen();
+        this.overscan = Math.max(0, overscan);
+        updateWindow();
+        return this;
+    }
+
+    /**
+     * Sets the layout mode for the list, defaults to {@code TopScrolling}.
+     *
+     * @param layoutMode The layout mode to set.
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder withLayoutMode(String layoutMode) {
+        checkNotFrozen();
+        this.layoutMode = layoutMode;
+        markDirty(STRUCTURE);
+        return this;
+    }
+
+    /**
+     * Moves the visible window so it starts at the given row. Call {@code flush()} on the HUD to send the change.
+     *
+     * @param firstVisibleRow the index of the first visible row, clamped to the data source.
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder scrollTo(int firstVisibleRow) {
+        checkNotFrozen();
+        this.firstVisibleRow = firstVisibleRow;
+        updateWindow();
+        return this;
+    }
+
+    /**
+     * Moves the visible window by the given number of rows.
+     *
+     * @param rows the number of rows to move, negative to move up.
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder scrollBy(int rows) {
+        return scrollTo(firstVisibleRow + rows);
+    }
+
+    /**
+     * Moves the visible window down by one page.
+     *
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder nextPage() {
+        return scrollBy(visibleRows);
+    }
+
+    /**
+     * Moves the visible window up by one page.
+     *
+     * @return This builder instance for method chaining.
+     */
+    public VirtualListBuilder previousPage() {
+        return scrollBy(-visibleRows);
+    }
+
+    /**
+     * @return the index of the first visible row.
+     */
+    public int getFirstVisibleRow() {
+        return firstVisibleRow;
+    }
+
+    /**
+     * @return the total number of rows.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param index the index of the row.
+     * @return the row at the given index, if it is currently built.
+     */
+    public Optional<UIElementBuilder<?>> getRow(int index) {
+        if (index < 0 || index >= rowCount) {
+            return Optional.empty();
+        }
+        return getKeyedChild(rowKey.apply(index));
+    }
+
+    @Override
+    protected boolean supportsStyling() {
+        return false;
+    }
+
+    @Override
+    protected void onBuild(UICommandRecorder commands) {
+        String selector = getSelector();
+        if (selector == null) return;
+
+        if (layoutMode != null) {
+            HyUIPlugin.getLog().logFine("Setting LayoutMode: %s for %s", layoutMode, selector);
+            commands.set(selector + ".LayoutMode", layoutMode);
+        }
+    }
+
+    private static void flush(UIContext context) {
+        if (context instanceof HyUIPage page) {
+            page.flush();
+        }
+    }
+
+    /**
+     * Replaces the built rows with the rows of the current window, leaving rows that stay inside it untouched.
+     */
+    private void updateWindow() {
+        if (rowFactory == null) {
+            return;
+        }
+        firstVisibleRow = Math.max(0, Math.min(firstVisibleRow, rowCount - visibleRows));
+        int start = Math.max(0, firstVisibleRow - overscan);
+        int end = Math.min(rowCount, firstVisibleRow + visibleRows + overscan);
+
+        List<String> keys = new ArrayList<>(end - start + 2);
+        Map<String, Integer> indices = new HashMap<>();
+        addSpacer(keys, "before:", start);
+        for (int i = start; i < end; i++) {
+            String key = rowKey.apply(i);
+            keys.add(key);
+            indices.put(key, i);
+        }
+        addSpacer(keys, "after:", rowCount - end);
+        updateKeyedChildren(keys, key -> indices.containsKey(key)
+                ? rowFactory.apply(indices.get(key))
+                : spacer(Integer.parseInt(key.substring(key.lastIndexOf(':') + 1))));
+    }
+
+    private void addSpacer(List<String> keys, String side, int rows) {
+        if (rowHeight > 0 && rows > 0) {
+            keys.add(SPACER_KEY + side + rows * rowHeight);
+        }
+    }
+
+    private static GroupBuilder spacer(int height) {
+        return GroupBuilder.group().withAnchor(new HyUIAnchor().setHeight(height));
+    }
+}
@@ -14,15 +14,15 @@ import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import org.checkerframework.checker.nullness.compatqual.NonNullDecl;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.hypixel.hytale.server.core.command.commands.player.inventory.InventorySeeCommand.MESSAGE_COMMANDS_ERRORS_PLAYER_NOT_IN_WORLD;
 
 public class HyUIAddHudCommand extends AbstractAsyncCommand {
 
-    public static final List<HyUIHud> HUD_INSTANCES = new ArrayList<>();
+    public static final List<HyUIHud> HUD_INSTANCES = new CopyOnWriteArrayList<>();
 
     public HyUIAddHudCommand() {
         super("add", "Adds a new HTML HUD");
@@ -188,7 +188,7 @@ public class HyUITestGuiCommand extends AbstractAsyncCommand {
                                 .withStep(10)
                                 .withValue(51)
                                 .addEventListener(CustomUIEventBindingType.ValueChanged, (value, ctx) -> {
-                                    HyUIPlugin.getLog().logInfo("Slider value changed to: " + value);
+                                    HyUIPlugin.getLog().logInfo("Slider value changed to: %s", value);
                                     String text = ctx.getValue("MyTextField", String.class).orElse("N/A");
                                     Integer num = ctx.getValue("Hey", Integer.class).orElse(0);
                                     playerRef.sendMessage(Message.raw("Text Field: " + text + ", Num: " + num));
@@ -60,7 +60,7 @@ public class HtmlParser {
     public List<UIElementBuilder<?>> parse(String html) {
         Document doc = Jsoup.parseBodyFragment(html);
         new CssPreprocessor().process(doc);
-        HyUIPlugin.getLog().logInfo("Document elements after preprocessing: " + doc.body().html());
+        HyUIPlugin.getLog().logFine(() -> "Document elements after preprocessing: " + doc.body().html());
         return parseChildren(doc.body());
     }
 
@@ -73,14 +73,14 @@ public class HtmlParser {
     public List<UIElementBuilder<?>> parseChildren(Element parent) {
         List<UIElementBuilder<?>> builders = new ArrayList<>();
         for (Node child : parent.childNodes()) {
-            HyUIPlugin.getLog().logInfo("Parsing child node: " + child.nodeName());
+            HyUIPlugin.getLog().logFine("Parsing child node: %s", child.nodeName());
             
             if (child instanceof Element) {
-                HyUIPlugin.getLog().logInfo("Parsing ELEMENT node: " + child.nodeName());
+                HyUIPlugin.getLog().logFine("Parsing ELEMENT node: %s", child.nodeName());
                 
                 UIElementBuilder<?> builder = handleElement((Element) child);
                 if (builder != null) {
-                    HyUIPlugin.getLog().logInfo("Parsed element: " + builder.getClass().getSimpleName());
+                    HyUIPlugin.getLog().logFine("Parsed element: %s", builder.getClass().getSimpleName());
                     builders.add(builder);
                 }
             } else if (child instanceof TextNode) {
@@ -100,7 +100,7 @@ public interface TagHandler {
                 case "background":
                 case "background-color":
                     // Groups/Containers can have Background set directly
-                    builder.editElementAfter((commandBuilder, selector) -> {
+                    builder.editElementAfter("background:" + value, (commandBuilder, selector) -> {
                         commandBuilder.set(selector + ".Background", value);
                     });
                     break;
@@ -210,7 +210,7 @@ public interface TagHandler {
                     // Padding only works on containers (Groups), not buttons or labels
                     // Only apply if this is a GroupBuilder
                     if (builder instanceof au.ellie.hyui.builders.GroupBuilder) {
-                        builder.editElementAfter((commandBuilder, selector) -> {
+                        builder.editElementAfter("padding:" + value, (commandBuilder, selector) -> {
                             String[] parts = value.trim().split("\\s+");
                             if (parts.length == 1) {
                                 // All sides
@@ -317,7 +317,7 @@ public interface TagHandler {
             // We need to inject the style as part of the button definition via appendInline
             // This is a limitation: we can't set Style dynamically, only via .ui files or inline DSL
             // For now, store it in the builder for potential future use
-            builder.editElementBefore((commandBuilder, selector) -> {
+            builder.editElementBefore("style:" + styleDsl, (commandBuilder, selector) -> {
                 // Inject a style definition inline before the button
                 // Format: @CustomButtonStyle = TextButtonStyle(...);
                 String styleVarName = "CustomStyle" + Math.abs(selector.hashCode());
@@ -326,7 +326,7 @@ public interface TagHandler {
             });
             
             // Then set the button to use that style
-            builder.editElementAfter((commandBuilder, selector) -> {
+            builder.editElementAfter("style:" + styleDsl, (commandBuilder, selector) -> {
                 String styleVarName = "CustomStyle" + Math.abs(selector.hashCode());
                 commandBuilder.set(selector + ".Style", "$." + styleVarName);
             });
@@ -0,0 +1,66 @@
+package au.ellie.hyui.builders;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HudRegistryTest {
+
+    private static HyUIHud hud() {
+        return new HyUIHud(null, "Hud.ui", List.of(), List.of());
+    }
+
+    @Test
+    void shownHudsKeepTheOrderTheyWereAddedIn() {
+        HyUIHud first = hud();
+        HyUIHud second = hud();
+        HudRegistry registry = HudRegistry.EMPTY.put("first", first).put("second", second);
+
+        assertEquals(List.of(first, second), registry.shown());
+        assertTrue(HudRegistry.EMPTY.shown().isEmpty());
+    }
+
+    @Test
+    void replacingAHudKeepsItsPlace() {
+        HyUIHud first = hud();
+        HyUIHud second = hud();
+        HyUIHud replacement = hud();
+        HudRegistry registry = HudRegistry.EMPTY.put("first", first).put("second", second).put("first", replacement);
+
+        assertEquals(List.of(replacement, second), registry.shown());
+        assertNull(registry.find(first));
+    }
+
+    @Test
+    void hiddenHudsKeepTheirNameAndAreShownLast() {
+        HyUIHud first = hud();
+        HyUIHud second = hud();
+        HudRegistry registry = HudRegistry.EMPTY.put("first", first).put("second", second).hide("first");
+
+        assertEquals(List.of(second), registry.shown());
+        assertFalse(registry.isShown(first));
+        assertSame(first, registry.get("first").hud());
+        assertTrue(registry.get("first").hidden());
+
+        registry = registry.show("first");
+        assertEquals(List.of(second, first), registry.shown());
+    }
+
+    @Test
+    void changesLeaveEarlierSnapshotsUntouched() {
+        HyUIHud first = hud();
+        HudRegistry before = HudRegistry.EMPTY.put("first", first);
+        HudRegistry after = before.remove("first");
+
+        assertEquals(List.of(first), before.shown());
+        assertTrue(after.entries().isEmpty());
+        assertSame(before, before.remove("missing"));
+        assertSame(before, before.show("first"));
+    }
+}
@@ -0,0 +1,83 @@
+package au.ellie.hyui.builders;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyUIStyleTest {
+
+    private static boolean contains(HyUIStyle.StyleCommand[] commands, String suffix, Object value) {
+        for (HyUIStyle.StyleCommand command : commands) {
+            if (command.suffix().equals(suffix) && command.value().equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    void compileIsCachedUntilChanged() {
+        HyUIStyle style = new HyUIStyle().setTextColor("#ffffff").setFontSize(12);
+
+        HyUIStyle.StyleCommand[] first = style.compile(Set.of());
+        assertSame(first, style.compile(Set.of()));
+
+        style.setTextColor("#000000");
+        HyUIStyle.StyleCommand[] second = style.compile(Set.of());
+        assertNotSame(first, second);
+        assertTrue(contains(second, ".TextColor", "#000000"));
+    }
+
+    @Test
+    void compileIsCachedPerUnsupportedSet() {
+        HyUIStyle style = new HyUIStyle().setTextColor("#ffffff").setFontSize(12);
+
+        HyUIStyle.StyleCommand[] all = style.compile(Set.of());
+        HyUIStyle.StyleCommand[] withoutFont = style.compile(Set.of("FontSize"));
+
+        assertTrue(contains(all, ".FontSize", 12.0));
+        assertFalse(contains(withoutFont, ".FontSize", 12.0));
+        assertSame(all, style.compile(Set.of()));
+    }
+
+    @Test
+    void changingAStateStyleInvalidatesTheCache() {
+        HyUIStyle disabled = new HyUIStyle().setTextColor("#888888");
+        HyUIStyle style = new HyUIStyle().setDisabledStyle(disabled);
+        style.compile(Set.of());
+
+        disabled.setTextColor("#444444");
+
+        assertTrue(contains(style.compile(Set.of()), ".Disabled.TextColor", "#444444"));
+    }
+
+    @Test
+    void replacingAStateStyleInvalidatesTheCache() {
+        HyUIStyle style = new HyUIStyle();
+        HyUIStyle first = new HyUIStyle().setTextColor("#111111").setFontSize(10);
+        style.setDisabledStyle(first);
+        style.compile(Set.of());
+
+        // Once summed, the old and the new stamps could be equal. Versions only ever grow.
+        HyUIStyle second = new HyUIStyle().setTextColor("#222222");
+        style.setDisabledStyle(second);
+
+        HyUIStyle.StyleCommand[] commands = style.compile(Set.of());
+        assertTrue(contains(commands, ".Disabled.TextColor", "#222222"));
+        assertFalse(contains(commands, ".Disabled.TextColor", "#111111"));
+    }
+
+    @Test
+    void recompilingUnchangedStyleGivesEqualCommands() {
+        HyUIStyle a = new HyUIStyle().setRenderBold(true).setAlignment(HyUIStyle.Alignment.Center);
+        HyUIStyle b = new HyUIStyle().setRenderBold(true).setAlignment(HyUIStyle.Alignment.Center);
+
+        assertArrayEquals(a.compile(Set.of()), b.compile(Set.of()));
+    }
+}
@@ -0,0 +1,132 @@
+package au.ellie.hyui.builders;
+
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyedChildrenTest {
+
+    private static int count(UICommandRecorder recorder, RecordedCommand.Kind... kinds) {
+        int count = 0;
+        for (int i = 0; i < recorder.size(); i++) {
+            for (RecordedCommand.Kind kind : kinds) {
+                if (recorder.kind(i) == kind) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static GroupBuilder list(List<String> keys) {
+        GroupBuilder group = GroupBuilder.group().withId("List");
+        group.withKeyedChildren(keys, key -> LabelBuilder.label().withText(key));
+        new HudBuilder().addElement(group);
+        return group;
+    }
+
+    @Test
+    void longestIncreasingSubsequence() {
+        assertEquals(List.of(), ElementTreeDiff.longestIncreasingSubsequence(new int[0]));
+        assertEquals(List.of(0, 1, 2), ElementTreeDiff.longestIncreasingSubsequence(new int[]{0, 1, 2}));
+        assertEquals(1, ElementTreeDiff.longestIncreasingSubsequence(new int[]{2, 1, 0}).size());
+        // 1, 2, 4 or 1, 3, 4 are both longest, either keeps three elements in place.
+        List<Integer> run = ElementTreeDiff.longestIncreasingSubsequence(new int[]{1, 3, 2, 0, 4});
+        assertEquals(3, run.size());
+        int[] values = {1, 3, 2, 0, 4};
+        for (int i = 1; i < run.size(); i++) {
+            assertTrue(values[run.get(i - 1)] < values[run.get(i)]);
+        }
+    }
+
+    @Test
+    void unchangedKeysKeepTheSnapshot() {
+        GroupBuilder group = list(List.of("a", "b"));
+        KeyedChildren.Snapshot before = group.getKeyedChildren();
+
+        group.withKeyedChildren(List.of("a", "b"), key -> LabelBuilder.label().withText(key));
+
+        assertSame(before, group.getKeyedChildren());
+    }
+
+    @Test
+    void duplicateKeysAreRejected() {
+        GroupBuilder group = list(List.of("a"));
+        assertThrows(IllegalArgumentException.class,
+                () -> group.withKeyedChildren(List.of("a", "a"), key -> LabelBuilder.label()));
+    }
+
+    @Test
+    void existingRowsAreKept() {
+        GroupBuilder group = list(List.of("a", "b"));
+        UIElementBuilder<?> a = group.getKeyedChildren().rows().get("a");
+
+        group.withKeyedChildren(List.of("b", "a", "c"), key -> LabelBuilder.label().withText(key));
+
+        assertSame(a, group.getKeyedChildren().rows().get("a"));
+        assertEquals(List.of("b", "a", "c"), group.getKeyedChildren().keys());
+    }
+
+    @Test
+    void onlyChangedRowsAreRecorded() {
+        GroupBuilder group = list(List.of("a", "b", "c", "d"));
+        KeyedChildren.Snapshot sent = group.getKeyedChildren();
+
+        // b is removed, e is added, and d moves in front of a.
+        group.withKeyedChildren(List.of("d", "a", "c", "e"), key -> LabelBuilder.label().withText(key));
+        UICommandRecorder recorder = new UICommandRecorder();
+        KeyedChildren.Snapshot sending = group.recordKeyedChildChanges(recorder, sent);
+
+        assertSame(group.getKeyedChildren(), sending);
+        // b removed, d removed and inserted again before a.
+        assertEquals(2, count(recorder, RecordedCommand.Kind.REMOVE));
+        assertEquals(2, count(recorder, RecordedCommand.Kind.INSERT_BEFORE, RecordedCommand.Kind.INSERT_BEFORE_INLINE,
+                RecordedCommand.Kind.APPEND, RecordedCommand.Kind.APPEND_INLINE));
+    }
+
+    @Test
+    void replacedRowsAreBuiltAgain() {
+        GroupBuilder group = list(List.of("a", "b"));
+        KeyedChildren.Snapshot sent = group.getKeyedChildren();
+
+        // Same keys, new elements, as when a virtual list gets a new data source.
+        group.withKeyedChildren(List.of(), key -> LabelBuilder.label());
+        group.withKeyedChildren(List.of("a", "b"), key -> LabelBuilder.label().withText(key + "2"));
+        UICommandRecorder recorder = new UICommandRecorder();
+        group.recordKeyedChildChanges(recorder, sent);
+
+        assertEquals(2, count(recorder, RecordedCommand.Kind.REMOVE));
+        assertEquals(2, count(recorder, RecordedCommand.Kind.INSERT_BEFORE, RecordedCommand.Kind.INSERT_BEFORE_INLINE,
+                RecordedCommand.Kind.APPEND, RecordedCommand.Kind.APPEND_INLINE));
+    }
+
+    @Test
+    void rowsAreSentToEveryInterface() {
+        GroupBuilder group = GroupBuilder.group().withId("List");
+        group.withKeyedChildren(List.of("a"), key -> LabelBuilder.label().withText(key));
+        HudBuilder builder = new HudBuilder().addElement(group);
+        HyUInterface first = new HyUInterface(builder.uiFile, builder.getTopLevelElements(), null) {};
+        HyUInterface second = new HyUInterface(builder.uiFile, builder.getTopLevelElements(), null) {};
+        first.buildFromCommandBuilder(new UICommandBuilder());
+        second.buildFromCommandBuilder(new UICommandBuilder());
+
+        group.withKeyedChildren(List.of("a", "b"), key -> LabelBuilder.label().withText(key));
+
+        UICommandRecorder recorder = new UICommandRecorder();
+        int written = first.buildDirty(recorder);
+        assertTrue(written > 0);
+        first.markSent();
+        recorder.reset();
+        assertEquals(written, second.buildDirty(recorder));
+        second.markSent();
+
+        recorder.reset();
+        assertEquals(0, first.buildDirty(recorder));
+    }
+}
@@ -0,0 +1,335 @@
+package au.ellie.hyui.builders;
+
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UICommandProgramTest {
+
+    private static HyUInterface newInterface(HudBuilder builder) {
+        return new HyUInterface(builder.uiFile, builder.getTopLevelElements(), builder.editCallbacks) {};
+    }
+
+    private static List<Object> setValues(UICommandRecorder recorder) {
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < recorder.size(); i++) {
+            if (recorder.kind(i) == RecordedCommand.Kind.SET) {
+                values.add(recorder.value(i));
+            }
+        }
+        return values;
+    }
+
+    @Test
+    void replayIsTheSameAsBuildingTheTree() {
+        LabelBuilder label = LabelBuilder.label().withId("Title").withText("Hello");
+        HudBuilder builder = new HudBuilder().addElement(label);
+
+        UICommandRecorder built = new UICommandRecorder();
+        built.append(builder.uiFile);
+        built.buildAll(builder.getTopLevelElements());
+        UICommandProgram program = UICommandProgram.compile(builder.uiFile, builder.getTopLevelElements(), null);
+
+        assertEquals(built.size(), program.size());
+        assertEquals(built.toProgram().structureHash(), program.structureHash());
+    }
+
+    @Test
+    void slotOverridesReplaceTheElementValue() {
+        LabelBuilder label = LabelBuilder.label().withId("Title").withText("Hello");
+        HudBuilder builder = new HudBuilder().addElement(label);
+        HyUInterface ui = newInterface(builder);
+        ui.buildFromCommandBuilder(new UICommandBuilder());
+
+        ui.setSlotValue("Title", "Text", "Bonjour");
+        UICommandRecorder recorder = new UICommandRecorder();
+        assertEquals(1, ui.buildDirty(recorder));
+        assertEquals(List.of("Bonjour"), setValues(recorder));
+    }
+
+    @Test
+    void dirtySlotsAreReplayedUntilMarkedSent() {
+        LabelBuilder label = LabelBuilder.label().withId("Title").withText("Hello");
+        HyUInterface ui = newInterface(new HudBuilder().addElement(label));
+        ui.buildFromCommandBuilder(new UICommandBuilder());
+        assertFalse(ui.hasPendingChanges());
+
+        label.withText("World");
+        UICommandRecorder recorder = new UICommandRecorder();
+        assertEquals(1, ui.buildDirty(recorder));
+        assertEquals(List.of("World"), setValues(recorder));
+
+        // Not sent yet, e.g. dropped by the packet limiter, so it is recorded again.
+        recorder.reset();
+        assertEquals(1, ui.buildDirty(recorder));
+
+        ui.markSent();
+        recorder.reset();
+        assertEquals(0, ui.buildDirty(recorder));
+        assertFalse(ui.hasPendingChanges());
+    }
+
+    @Test
+    void sharedElementsAreSentToEveryInterface() {
+        LabelBuilder label = LabelBuilder.label().withId("Title").withText("Hello");
+        HudBuilder builder = new HudBuilder().addElement(label);
+        HyUInterface first = newInterface(builder);
+        HyUInterface second = newInterface(builder);
+        first.buildFromCommandBuilder(new UICommandBuilder());
+        second.buildFromCommandBuilder(new UICommandBuilder());
+
+        label.withText("World");
+        UICommandRecorder recorder = new UICommandRecorder();
+        assertEquals(1, first.buildDirty(recorder));
+        first.markSent();
+
+        recorder.reset();
+        assertEquals(1, second.buildDirty(recorder));
+        assertEquals(List.of("World"), setValues(recorder));
+    }
+
+    @Test
+    void structuralChangesNeedARebuild() {
+        GroupBuilder group = GroupBuilder.group().withId("Box");
+        HyUInterface ui = newInterface(new HudBuilder().addElement(group));
+        ui.buildFromCommandBuilder(new UICommandBuilder());
+
+        group.addChild(LabelBuilder.label().withText("New"));
+
+        assertEquals(-1, ui.buildDirty(new UICommandRecorder()));
+    }
+
+    @Test
+    void changesAfterCompilingAreNotLostOnRebuild() {
+        GroupBuilder group = GroupBuilder.group().withId("Box");
+        HudBuilder builder = new HudBuilder().addElement(group).compile();
+        HyUInterface ui = newInterface(builder);
+        ui.setProgram(builder.getProgram());
+        ui.buildFromCommandBuilder(new UICommandBuilder());
+        assertTrue(builder.getProgram().isCurrent());
+
+        group.withAnchor(new HyUIAnchor().setHeight(20));
+        assertFalse(builder.getProgram().isCurrent());
+        assertEquals(-1, ui.buildDirty(new UICommandRecorder()));
+
+        ui.buildFromCommandBuilder(new UICommandBuilder());
+        assertNotSame(builder.getProgram(), ui.lastProgram);
+        assertTrue(ui.lastProgram.isCurrent());
+        assertTrue(builder.freeze().getProgram().isCurrent());
+    }
+
+    @Test
+    void overridesAreSentApartFromTheSharedChanges() {
+        LabelBuilder label = LabelBuilder.label().withId("Title").withText("Hello");
+        HudBuilder builder = new HudBuilder().addElement(label);
+        HyUInterface shared = newInterface(builder);
+        HyUInterface subscriber = newInterface(builder);
+        shared.buildFromCommandBuilder(new UICommandBuilder());
+        subscriber.buildFromCommandBuilder(new UICommandBuilder());
+        UICommandProgram program = subscriber.lastProgram;
+
+        subscriber.setSlotValue("Title", "Text", "Mine");
+        UICommandRecorder recorder = new UICommandRecorder();
+        assertEquals(1, subscriber.buildOverrides(recorder, program, Set.of()));
+        assertEquals(List.of("Mine"), setValues(recorder));
+        subscriber.markSent();
+
+        // A shared change leaves nothing of the subscriber's own to send, unless it overwrote an override.
+        label.withText("World");
+        UICommandRecorder sharedChanges = new UICommandRecorder();
+        assertEquals(1, shared.buildDirty(sharedChanges));
+        recorder.reset();
+        assertEquals(0, subscriber.buildOverrides(recorder, program, Set.of()));
+        assertEquals(1, subscriber.buildOverrides(recorder, program, Set.of(sharedChanges.selector(0))));
+        assertEquals(List.of("Mine"), setValues(recorder));
+    }
+
+    @Test
+    void unchangedBindingsAreNotSent() {
+        AtomicReference<String> text = new AtomicReference<>("A");
+        LabelBuilder label = LabelBuilder.label().withId("Title").bindText(text::get);
+        HyUInterface ui = newInterface(new HudBuilder().addElement(label));
+        ui.buildFromCommandBuilder(new UICommandBuilder());
+
+        UICommandRecorder recorder = new UICommandRecorder();
+        assertEquals(0, ui.buildDirty(recorder));
+
+        text.set("B");
+        assertEquals(1, ui.buildDirty(recorder));
+        assertEquals(List.of("B"), setValues(recorder));
+        ui.markSent();
+
+        recorder.reset();
+        assertEquals(0, ui.buildDirty(recorder));
+    }
+
+    @Test
+    void identicalTreesGetIdenticalIds() {
+        GroupBuilder first = GroupBuilder.group();
+        GroupBuilder second = GroupBuilder.group();
+        new HudBuilder().addElement(first);
+        new HudBuilder().addElement(second);
+
+        // Added after the groups got their IDs, so taken from the same per-tree allocator.
+        LabelBuilder firstChild = LabelBuilder.label();
+        LabelBuilder secondChild = LabelBuilder.label();
+        first.addChild(firstChild);
+        second.addChild(secondChild);
+
+        assertEquals(first.getEffectiveId(), second.getEffectiveId());
+        assertEquals(firstChild.getEffectiveId(), secondChild.getEffectiveId());
+    }
+
+    @Test
+    void registeringReplacesAnIdReadBeforehand() {
+        LabelBuilder early = LabelBuilder.label();
+        String provisional = early.getEffectiveId();
+        assertFalse(early.hasExplicitId());
+        LabelBuilder late = LabelBuilder.label();
+        new HudBuilder().addElement(early);
+        new HudBuilder().addElement(late);
+
+        assertNotEquals(provisional, early.getEffectiveId());
+        assertEquals(late.getEffectiveId(), early.getEffectiveId());
+        assertEquals(early.getEffectiveId(), early.getId());
+        assertFalse(early.hasExplicitId());
+    }
+
+    @Test
+    void idPartsNeverRunTogether() {
+        assertNotEquals(ElementIdAllocator.format("item1", "", 2), ElementIdAllocator.format("item", "", 12));
+        assertNotEquals(ElementIdAllocator.format("a", "b1", 2), ElementIdAllocator.format("a", "b", 12));
+        assertNotEquals(ElementIdAllocator.format("aQs", "", 0), ElementIdAllocator.format("a", "", 0));
+        assertNotEquals(ElementIdAllocator.format("ab", "", 0), ElementIdAllocator.format("a", "b", 0));
+    }
+
+    @Test
+    void mountedSelectorsAreScopedToTheMount() {
+        assertEquals("#Mount", RecordedCommand.mount(null, "#Mount"));
+        assertEquals("#Mount #HyUIRoot", RecordedCommand.mount("#HyUIRoot", "#Mount"));
+        assertEquals("#Mount #Label.Text", RecordedCommand.mount("#Label.Text", "#Mount"));
+    }
+
+    @Test
+    void buildingLeavesChildParentSelectorsUnchanged() {
+        LabelBuilder content = LabelBuilder.label().withId("Body").withText("Hello");
+        ContainerBuilder container = ContainerBuilder.container().withId("Box").addContentChild(content);
+        HudBuilder builder = new HudBuilder().addElement(container);
+
+        UICommandProgram first = UICommandProgram.compile(builder.uiFile, builder.getTopLevelElements(), null);
+        UICommandProgram second = UICommandProgram.compile(builder.uiFile, builder.getTopLevelElements(), null);
+
+        assertEquals("#Content", content.parentSelector);
+        assertEquals(first.structureHash(), second.structureHash());
+    }
+
+    @Test
+    void frozenElementsRejectEveryChange() {
+        LabelBuilder label = LabelBuilder.label().withId("Title").withText("Hello");
+        HudBuilder builder = new HudBuilder().addElement(label);
+        builder.freeze();
+
+        assertThrows(IllegalStateException.class, () -> label.withText("Bonjour"));
+        assertThrows(IllegalStateException.class, () -> builder.withIdScope("Other"));
+        assertThrows(IllegalStateException.class, () -> builder.withParallelBuild(64));
+        assertThrows(IllegalStateException.class, () -> label.inside("#Other"));
+        assertThrows(IllegalStateException.class, () -> label.addEventListener(null, Object.class, value -> { }));
+        assertEquals("#HyUIRoot", label.parentSelector);
+    }
+
+    @Test
+    void onlyChangedElementsAreBuiltToCompareTheStructure() {
+        int[] builds = new int[1];
+        LabelBuilder counted = new LabelBuilder() {
+            @Override
+            protected void onBuild(UICommandRecorder commands) {
+                builds[0]++;
+                super.onBuild(commands);
+            }
+        }.withId("Counted").withText("Hello");
+        LabelBuilder moved = LabelBuilder.label().withId("Moved").withAnchor(new HyUIAnchor().setLeft(10));
+        HyUInterface ui = newInterface(new HudBuilder().addElement(counted).addElement(moved));
+        ui.buildFromCommandBuilder(new UICommandBuilder());
+        int afterBuild = builds[0];
+
+        moved.withAnchor(new HyUIAnchor().setLeft(10));
+        assertEquals(0, ui.buildDirty(new UICommandRecorder()));
+        assertEquals(afterBuild, builds[0]);
+
+        moved.withAnchor(new HyUIAnchor().setLeft(20));
+        assertEquals(-1, ui.buildDirty(new UICommandRecorder()));
+        assertEquals(afterBuild, builds[0]);
+    }
+
+    @Test
+    void updatingFromABuilderLeavesItsIdsUnchanged() {
+        LabelBuilder shown = LabelBuilder.label().withText("Hello");
+        HyUInterface ui = newInterface(new HudBuilder().addElement(shown));
+        ui.buildFromCommandBuilder(new UICommandBuilder());
+
+        GroupBuilder added = GroupBuilder.group();
+        LabelBuilder replacement = LabelBuilder.label().withText("Bye");
+        HudBuilder next = new HudBuilder().addElement(added).addElement(replacement);
+        String replacementId = replacement.getEffectiveId();
+        String addedId = added.getEffectiveId();
+        assertNotEquals(shown.getEffectiveId(), replacementId);
+        UICommandRecorder recorder = new UICommandRecorder();
+        assertTrue(ui.updateTree(next.uiFile, next.getTopLevelElements(), next.editCallbacks, null, recorder) > 0);
+        ui.markSent();
+
+        assertEquals(replacementId, replacement.getEffectiveId());
+        assertEquals(addedId, added.getEffectiveId());
+        assertTrue(recorder.selector(recorder.size() - 1).startsWith("#" + shown.getEffectiveId() + "."));
+
+        // Later updates target the element the client already has.
+        replacement.withText("Again");
+        UICommandRecorder dirty = new UICommandRecorder();
+        assertEquals(1, ui.buildDirty(dirty));
+        assertTrue(dirty.selector(0).startsWith("#" + shown.getEffectiveId() + "."));
+    }
+
+    @Test
+    void updatingToAnIdenticalTreeLeavesNothingPending() {
+        HudBuilder first = new HudBuilder().addElement(LabelBuilder.label().withText("Hello"));
+        HyUIHud hud = new HyUIHud(null, first.uiFile, first.getTopLevelElements(), first.editCallbacks);
+        hud.delegate.buildFromCommandBuilder(new UICommandBuilder());
+
+        hud.update(new HudBuilder().addElement(LabelBuilder.label().withText("Hello")));
+
+        assertFalse(hud.delegate.hasPendingChanges());
+    }
+
+    @Test
+    void editCallbacksMatchByIdentityOrKey() {
+        LabelBuilder shown = LabelBuilder.label().withText("Hello")
+                .editElementAfter("background:#222", (commands, selector) -> commands.set(selector + ".Background", "#222"));
+        HyUInterface ui = newInterface(new HudBuilder().addElement(shown));
+        ui.buildFromCommandBuilder(new UICommandBuilder());
+
+        LabelBuilder keyed = LabelBuilder.label().withText("Bye")
+                .editElementAfter("background:#222", (commands, selector) -> commands.set(selector + ".Background", "#222"));
+        HudBuilder sameKey = new HudBuilder().addElement(keyed);
+        UICommandRecorder patched = new UICommandRecorder();
+        ui.updateTree(sameKey.uiFile, sameKey.getTopLevelElements(), sameKey.editCallbacks, null, patched);
+        ui.markSent();
+        assertEquals(List.of("Bye"), setValues(patched));
+
+        LabelBuilder unkeyed = LabelBuilder.label().withText("Bye")
+                .editElementAfter((commands, selector) -> commands.set(selector + ".Background", "#222"));
+        HudBuilder noKey = new HudBuilder().addElement(unkeyed);
+        UICommandRecorder rebuilt = new UICommandRecorder();
+        ui.updateTree(noKey.uiFile, noKey.getTopLevelElements(), noKey.editCallbacks, null, rebuilt);
+        assertEquals(RecordedCommand.Kind.REMOVE, rebuilt.kind(0));
+    }
+}
@@ -0,0 +1,155 @@
+package au.ellie.hyui.builders;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UIFrameSchedulerTest {
+
+    /**
+     * Stands in for a world, running its queued tasks only when told to.
+     */
+    private static final class World implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        int tick() {
+            int ran = 0;
+            for (int pending = tasks.size(); pending > 0; pending--) {
+                tasks.poll().run();
+                ran++;
+            }
+            return ran;
+        }
+    }
+
+    @BeforeEach
+    void ignoreTheClock() {
+        // A slow first tick would otherwise spend the time budget and leave work for the next one.
+        UIFrameScheduler.setTimeBudgetMillis(60_000);
+    }
+
+    @AfterEach
+    void resetBudget() {
+        UIFrameScheduler.setTimeBudgetMillis(5);
+        UIFrameScheduler.setCommandBudget(0);
+    }
+
+    @Test
+    void workRunsHighestPriorityFirstOnTheWorldThread() {
+        World world = new World();
+        List<String> ran = new ArrayList<>();
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.DECORATIVE, "decorative", () -> ran.add("decorative"));
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.NORMAL, "normal", () -> ran.add("normal"));
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.INTERACTIVE, "interactive", () -> ran.add("interactive"));
+
+        assertEquals(List.of(), ran);
+        assertEquals(1, world.tick());
+        assertEquals(List.of("interactive", "normal", "decorative"), ran);
+    }
+
+    @Test
+    void workQueuedUnderTheSameKeyIsMergedAtTheHighestPriority() {
+        World world = new World();
+        List<String> ran = new ArrayList<>();
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.NORMAL, "other", () -> ran.add("other"));
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.DECORATIVE, "hud", () -> ran.add("first"));
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.INTERACTIVE, "hud", () -> ran.add("second"));
+
+        world.tick();
+        assertEquals(List.of("first", "other"), ran);
+    }
+
+    @Test
+    void workOverTheCommandBudgetRollsIntoTheNextTick() {
+        World world = new World();
+        UIFrameScheduler.setCommandBudget(10);
+        List<String> ran = new ArrayList<>();
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.NORMAL, "a", () -> {
+            ran.add("a");
+            UIFrameScheduler.recordCommands(world, 10);
+        });
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.NORMAL, "b", () -> ran.add("b"));
+
+        world.tick();
+        assertEquals(List.of("a"), ran);
+        world.tick();
+        assertEquals(List.of("a", "b"), ran);
+    }
+
+    @Test
+    void workDoneOutsideTheQueueIsChargedToTheNextTick() {
+        World world = new World();
+        UIFrameScheduler.setCommandBudget(10);
+        List<String> ran = new ArrayList<>();
+        UIFrameScheduler.runCharged(world, () -> UIFrameScheduler.recordCommands(world, 10));
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.NORMAL, "a", () -> ran.add("a"));
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.NORMAL, "b", () -> ran.add("b"));
+
+        // At least one piece of work runs every tick, however much was spent.
+        world.tick();
+        assertEquals(List.of("a"), ran);
+        world.tick();
+        assertEquals(List.of("a", "b"), ran);
+    }
+
+    @Test
+    void worldsHaveQueuesOfTheirOwn() {
+        World first = new World();
+        World second = new World();
+        List<String> ran = new ArrayList<>();
+        UIFrameScheduler.submit(first, UIFrameScheduler.Priority.NORMAL, "hud", () -> ran.add("first"));
+        UIFrameScheduler.submit(second, UIFrameScheduler.Priority.NORMAL, "hud", () -> ran.add("second"));
+
+        second.tick();
+        assertEquals(List.of("second"), ran);
+        first.tick();
+        assertEquals(List.of("second", "first"), ran);
+    }
+
+    @Test
+    void flushesRunAtTheEndOfTheTick() {
+        World world = new World();
+        List<String> ran = new ArrayList<>();
+        UIFrameScheduler.submitFlush(world, UIFrameScheduler.Priority.INTERACTIVE, "flush", () -> ran.add("flush"));
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.DECORATIVE, "refresh", () -> {
+            ran.add("refresh");
+            UIFrameScheduler.submitFlush(world, UIFrameScheduler.Priority.NORMAL, "flush", () -> ran.add("merged"));
+            UIFrameScheduler.submitFlush(world, UIFrameScheduler.Priority.NORMAL, "other", () -> ran.add("other"));
+        });
+
+        assertEquals(1, world.tick());
+        assertEquals(List.of("refresh", "flush", "other"), ran);
+    }
+
+    @Test
+    void everyFlushRunsOnceTheWorkSpentTheBudget() {
+        World world = new World();
+        UIFrameScheduler.setCommandBudget(10);
+        List<String> ran = new ArrayList<>();
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.NORMAL, "refresh", () -> {
+            ran.add("refresh");
+            UIFrameScheduler.recordCommands(world, 10);
+            UIFrameScheduler.submitFlush(world, UIFrameScheduler.Priority.NORMAL, "first", () -> ran.add("first"));
+            UIFrameScheduler.submitFlush(world, UIFrameScheduler.Priority.NORMAL, "second", () -> ran.add("second"));
+        });
+        UIFrameScheduler.submit(world, UIFrameScheduler.Priority.NORMAL, "later", () -> ran.add("later"));
+
+        world.tick();
+        assertEquals(List.of("refresh", "first", "second"), ran);
+        world.tick();
+        assertEquals(List.of("refresh", "first", "second", "later"), ran);
+    }
+}
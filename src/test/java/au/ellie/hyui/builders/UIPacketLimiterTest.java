@@ -0,0 +1,62 @@
+package au.ellie.hyui.builders;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UIPacketLimiterTest {
+
+    @Test
+    void aBurstUpToTheBudgetIsSentAtOnce() {
+        UIPacketLimiter limiter = new UIPacketLimiter(3);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(3, limiter.getSentCount());
+        assertTrue(limiter.millisUntilAvailable() > 0);
+    }
+
+    @Test
+    void releasedPacketsAreGivenBack() {
+        UIPacketLimiter limiter = new UIPacketLimiter(1);
+        assertTrue(limiter.tryAcquire());
+
+        limiter.release();
+        assertEquals(0, limiter.getSentCount());
+        assertEquals(0, limiter.millisUntilAvailable());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void theBudgetRefillsOverTime() throws InterruptedException {
+        UIPacketLimiter limiter = new UIPacketLimiter(1000);
+        while (limiter.tryAcquire()) {
+            // Spend the burst.
+        }
+
+        Thread.sleep(5);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void mergedAndDroppedUpdatesAreCounted() {
+        UIPacketLimiter limiter = new UIPacketLimiter(1);
+        limiter.recordMerged(2);
+        limiter.recordDropped(1);
+
+        assertEquals(2, limiter.getMergedCount());
+        assertEquals(1, limiter.getDroppedCount());
+    }
+
+    @Test
+    void theBudgetMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new UIPacketLimiter(0));
+        UIPacketLimiter limiter = new UIPacketLimiter(1);
+        assertThrows(IllegalArgumentException.class, () -> limiter.setMaxPacketsPerSecond(-1));
+    }
+}
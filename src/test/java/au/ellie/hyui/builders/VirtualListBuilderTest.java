@@ -0,0 +1,83 @@
+package au.ellie.hyui.builders;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualListBuilderTest {
+
+    private static VirtualListBuilder list(int rows) {
+        return VirtualListBuilder.virtualList()
+                .withId("List")
+                .withVisibleRows(4)
+                .withOverscan(1)
+                .withRows(rows, i -> LabelBuilder.label().withText("Row " + i));
+    }
+
+    @Test
+    void onlyTheWindowAndItsOverscanAreBuilt() {
+        VirtualListBuilder list = list(100);
+
+        assertEquals(List.of("0", "1", "2", "3", "4"), list.getKeyedChildren().keys());
+        assertTrue(list.getRow(4).isPresent());
+        assertFalse(list.getRow(5).isPresent());
+    }
+
+    @Test
+    void pagingKeepsTheRowsThatStayInTheWindow() {
+        VirtualListBuilder list = list(100);
+        UIElementBuilder<?> row = list.getRow(4).orElseThrow();
+
+        list.nextPage();
+
+        assertEquals(4, list.getFirstVisibleRow());
+        assertEquals(List.of("3", "4", "5", "6", "7", "8"), list.getKeyedChildren().keys());
+        assertSame(row, list.getRow(4).orElseThrow());
+    }
+
+    @Test
+    void newDataReplacesTheBuiltRows() {
+        List<String> data = new ArrayList<>(List.of("a", "b", "c", "d", "e", "f"));
+        VirtualListBuilder list = VirtualListBuilder.virtualList()
+                .withVisibleRows(4)
+                .withRows(data.size(), i -> LabelBuilder.label().withText(data.get(i)));
+        UIElementBuilder<?> first = list.getRow(0).orElseThrow();
+
+        data.set(0, "z");
+        list.withRowCount(data.size());
+        // Index keys do not tell a row's data changed.
+        assertSame(first, list.getRow(0).orElseThrow());
+
+        list.withRows(data.size(), i -> LabelBuilder.label().withText(data.get(i)));
+        assertNotSame(first, list.getRow(0).orElseThrow());
+        assertEquals(List.of("0", "1", "2", "3", "4", "5"), list.getKeyedChildren().keys());
+    }
+
+    @Test
+    void theWindowStaysInsideTheRows() {
+        VirtualListBuilder list = list(10).scrollTo(50);
+
+        assertEquals(6, list.getFirstVisibleRow());
+        list.previousPage().previousPage();
+        assertEquals(0, list.getFirstVisibleRow());
+    }
+
+    @Test
+    void spacersStandInForTheRowsOutsideTheWindow() {
+        VirtualListBuilder list = list(100).withRowHeight(20).scrollTo(10);
+
+        List<String> keys = list.getKeyedChildren().keys();
+        assertEquals(8, keys.size());
+        // Rows 0 to 8 and 15 to 99 are not built.
+        assertTrue(keys.get(0).endsWith("before:180"));
+        assertEquals("9", keys.get(1));
+        assertTrue(keys.get(7).endsWith("after:1700"));
+    }
+}